@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+/**
+ * Resolves a batch of identifiers against a corpus of generated paths, once in a single pass and
+ * once pattern by pattern. Run with {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism}
+ * to compare the throughput on different numbers of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchMatchBenchmark {
+
+    private static final String[] WORDS = {
+        "matcher", "index", "fuzzy", "result", "view", "terminal", "config", "build", "util"
+    };
+
+    @Param("200000")
+    int items;
+
+    @Param({"10", "1000"})
+    int patterns;
+
+    @Param("10")
+    int limit;
+
+    private FuzzyMatcherV1<String> matcher;
+    private List<String> batch;
+
+    @Setup
+    public void setUp() {
+        final var index = MatchIndex.build(FuzzyMatcherBenchmark.corpus(items), false, false);
+        index.prepareAsync().join();
+        matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+
+        final var random = new Random(7);
+        batch = new ArrayList<>(patterns);
+        for (var i = 0; i < patterns; i++) {
+            batch.add(WORDS[random.nextInt(WORDS.length)] + random.nextInt(items));
+        }
+    }
+
+    @Benchmark
+    public List<List<Result<String>>> singlePass() {
+        return matcher.matchAll(batch, limit);
+    }
+
+    @Benchmark
+    public List<List<Result<String>>> perPattern() {
+        final var results = new ArrayList<List<Result<String>>>(batch.size());
+        for (final var pattern : batch) {
+            final var matched = matcher.match(pattern);
+            results.add(matched.subList(0, Math.min(limit, matched.size())));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gesundkrank.fzf4j.JitWarmup;
+import de.gesundkrank.fzf4j.View;
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.TerminalColors;
+import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.HeadlessRenderer;
+
+/**
+ * Matches and renders the first query of a fresh JVM, once right after the unfiltered items were
+ * shown and once after a {@link JitWarmup} ran on them. The index is prepared in both cases, so
+ * only the state of the JIT differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class FirstQueryBenchmark {
+
+    private static final int COLUMNS = 200;
+    private static final int ROWS = 60;
+
+    @Param("100000")
+    int items;
+
+    @Param({"false", "true"})
+    boolean warmup;
+
+    @Param({"s", "srcjava"})
+    String pattern;
+
+    private FuzzyMatcherV1<String> matcher;
+    private View view;
+    private TerminalState<String> state;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var index = MatchIndex.build(FuzzyMatcherBenchmark.corpus(items), false, false);
+        matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+        view = new View(new HeadlessRenderer(COLUMNS, ROWS), items, false,
+                        TerminalColors.DEFAULT_COLORS, null, null);
+        state = new TerminalState<>(matcher.match(""));
+        view.render(state);
+        index.prepareAsync().join();
+
+        if (warmup) {
+            new JitWarmup(state.getResults(), FirstQueryBenchmark::sampleMatcher).run();
+        }
+    }
+
+    private static Matcher<String> sampleMatcher(final List<String> sample) {
+        return new FuzzyMatcherV1<>(MatchIndex.build(sample, false, false), OrderBy.SCORE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        view.close();
+    }
+
+    @Benchmark
+    public TerminalState<String> firstQuery() throws IOException {
+        state.setQuery(pattern);
+        state.setCursorPosition(pattern.length());
+        state.setResults(matcher.match(pattern));
+        view.render(state);
+        return state;
+    }
+}
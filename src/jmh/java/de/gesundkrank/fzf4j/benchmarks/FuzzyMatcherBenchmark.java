@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+/**
+ * Matches queries against a corpus of generated paths with preprocessed index chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzyMatcherBenchmark {
+
+    private static final String[] WORDS = {
+        "src", "main", "java", "test", "resources", "lib", "usr", "share", "doc", "matcher",
+        "index", "fuzzy", "result", "view", "terminal", "config", "build", "gradle", "util"
+    };
+
+    @Param("1000000")
+    int items;
+
+    @Param({"fuzzymatcher", "srcmainjava", "fuzzymatchre", "javamainsrc"})
+    String pattern;
+
+    @Param({"0", "2"})
+    int typos;
+
+    private FuzzyMatcherV1<String> matcher;
+
+    static List<String> corpus(final int size) {
+        final var random = new Random(42);
+        return IntStream.range(0, size)
+                .mapToObj(i -> {
+                    final var path = new StringBuilder();
+                    for (var depth = 2 + random.nextInt(5); depth > 0; depth--) {
+                        path.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+                    }
+                    return path.append(i).append(".java").toString();
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Setup
+    public void setUp() {
+        final var index = MatchIndex.build(corpus(items), false, false);
+        index.prepareAsync().join();
+        matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, typos);
+    }
+
+    @Benchmark
+    public List<Result<String>> match() {
+        return matcher.match(pattern);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.terminal.virtual.DefaultVirtualTerminal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.gesundkrank.fzf4j.View;
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.TerminalColors;
+import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.AnsiRenderer;
+import de.gesundkrank.fzf4j.renderers.HeadlessRenderer;
+import de.gesundkrank.fzf4j.renderers.Renderer;
+
+/**
+ * Renders a full frame of match results without a terminal. The headless renderer measures the
+ * cost of composing the frame, the ANSI renderer additionally encodes it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final int COLUMNS = 200;
+    private static final int ROWS = 60;
+
+    @Param({"headless", "ansi"})
+    String renderer;
+
+    private View view;
+    private TerminalState<String> state;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var index = MatchIndex.build(FuzzyMatcherBenchmark.corpus(10_000), false, false);
+        state = new TerminalState<>(new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("srcjava"));
+        state.setQuery("srcjava");
+
+        final Renderer frames = "ansi".equals(renderer)
+                                ? new AnsiRenderer(
+                                        new DefaultVirtualTerminal(new TerminalSize(COLUMNS, ROWS)),
+                                        OutputStream.nullOutputStream())
+                                : new HeadlessRenderer(COLUMNS, ROWS);
+        view = new View(frames, index.size(), false, TerminalColors.DEFAULT_COLORS, null, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        view.close();
+    }
+
+    @Benchmark
+    public void render() throws IOException {
+        view.render(state);
+    }
+}
@@ -23,16 +23,42 @@
 package de.gesundkrank.fzf4j;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import com.googlecode.lanterna.input.KeyStroke;
 import com.googlecode.lanterna.input.KeyType;
 
+import de.gesundkrank.fzf4j.matchers.ChangeListener;
 import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.LiveIndex;
+import de.gesundkrank.fzf4j.matchers.LiveMatcher;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.matchers.ProgressListener;
+import de.gesundkrank.fzf4j.models.FieldSelector;
 import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
 import de.gesundkrank.fzf4j.models.TerminalColors;
 import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.LanternaRenderer;
+import de.gesundkrank.fzf4j.renderers.Renderer;
+import de.gesundkrank.fzf4j.utils.Threads;
 
 public class Fzf {
 
@@ -41,8 +67,14 @@ public class Fzf {
     private final boolean normalize;
     private final boolean caseSensitive;
     private final TerminalColors terminalColors;
-
-    private FuzzyMatcherV1 fuzzyMatcherV1;
+    private final Function<String, List<String>> preview;
+    private final FieldSelector fields;
+    private final boolean deduplicate;
+    private final boolean showDuplicateCount;
+    private final int maxTypos;
+    private final Duration latencyBudget;
+    private final Supplier<? extends Renderer> renderer;
+    private final boolean warmup;
 
     public Fzf() {
         this(
@@ -61,12 +93,52 @@ public class Fzf {
             final boolean caseSensitive,
             final TerminalColors terminalColors
     ) {
+        this(orderBy, reverse, normalize, caseSensitive, terminalColors, null);
+    }
+
+    public Fzf(
+            final OrderBy orderBy,
+            final boolean reverse,
+            final boolean normalize,
+            final boolean caseSensitive,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview
+    ) {
+        this(
+                orderBy, reverse, normalize, caseSensitive, terminalColors, preview, null, false,
+                false, 0, Duration.ZERO, LanternaRenderer::new, false
+        );
+    }
+
+    private Fzf(
+            final OrderBy orderBy,
+            final boolean reverse,
+            final boolean normalize,
+            final boolean caseSensitive,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview,
+            final FieldSelector fields,
+            final boolean deduplicate,
+            final boolean showDuplicateCount,
+            final int maxTypos,
+            final Duration latencyBudget,
+            final Supplier<? extends Renderer> renderer,
+            final boolean warmup
+    ) {
 
         this.orderBy = orderBy;
         this.reverse = reverse;
         this.normalize = normalize;
         this.caseSensitive = caseSensitive;
         this.terminalColors = terminalColors;
+        this.preview = preview;
+        this.fields = fields;
+        this.deduplicate = deduplicate;
+        this.showDuplicateCount = showDuplicateCount;
+        this.maxTypos = maxTypos;
+        this.latencyBudget = latencyBudget;
+        this.renderer = renderer;
+        this.warmup = warmup;
     }
 
     /**
@@ -98,17 +170,120 @@ public class Fzf {
      */
     public List<String> multiSelect(final List<String> items, final int maxItems)
             throws EmptyResultException, IOException, AbortByUserException {
-        final var state = select(items, true, maxItems);
+        return multiSelect(buildIndex(items), maxItems);
+    }
+
+    /**
+     * Runs fzf for a list of items of any type, matching and showing the key of each item.
+     * Multiple items can be selected using <i>Tab</i>. Returns the selected items or throws an
+     * exception.
+     *
+     * @param items        List of items to select results from.
+     * @param keyExtractor Function returning the text of an item, called once per item.
+     * @param maxItems     Number of items that can be selected.
+     *                     Set to <i>-1</i> to not limited number of selected items.
+     * @param <T>          Type of the items
+     * @return Selected items
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> List<T> multiSelect(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final int maxItems
+    ) throws EmptyResultException, IOException, AbortByUserException {
+        return multiSelect(buildIndex(items, keyExtractor), maxItems);
+    }
+
+    /**
+     * Runs fzf for a preprocessed index, e.g. loaded from a snapshot using
+     * {@link MatchIndex#load(java.nio.file.Path)}. Multiple items can be selected using
+     * <i>Tab</i>. The normalize and case sensitive options of the index are used.
+     *
+     * @param index    Index of the items to select results from.
+     * @param maxItems Number of items that can be selected.
+     *                 Set to <i>-1</i> to not limited number of selected items.
+     * @param <T>      Type of the items
+     * @return Selected items
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> List<T> multiSelect(final MatchIndex<T> index, final int maxItems)
+            throws EmptyResultException, IOException, AbortByUserException {
+        final var matchIndex = deduplicate ? index.deduplicate() : index;
+        final var state = select(matchIndex, true, maxItems);
         final var selectedItems = state.getSelectedItems();
         if (selectedItems.isEmpty()) {
             if (state.getCursorItem() == -1) {
                 throw new EmptyResultException();
             } else {
-                return Collections.singletonList(state.getCursorResult().getText());
+                return occurrences(matchIndex, Set.of(state.getCursorResult().getItemIndex()));
+            }
+        }
+
+        return occurrences(matchIndex, selectedItems);
+    }
+
+    /**
+     * Runs fzf for a live index whose items may change while it's shown. The results of the
+     * current query are updated on each change. Multiple items can be selected using <i>Tab</i>,
+     * the selection is cleared if the index is compacted. The normalize and case sensitive
+     * options of the index are used.
+     *
+     * @param index    Live index of the items to select results from.
+     * @param maxItems Number of items that can be selected.
+     *                 Set to <i>-1</i> to not limited number of selected items.
+     * @param <T>      Type of the items
+     * @return Selected items
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> List<T> multiSelect(final LiveIndex<T> index, final int maxItems)
+            throws EmptyResultException, IOException, AbortByUserException {
+        return multiSelect(liveMatcher(index), maxItems);
+    }
+
+    /**
+     * Runs fzf for a custom matcher backend, e.g. a
+     * {@link de.gesundkrank.fzf4j.daemon.RemoteMatcher} querying a matcher daemon. Multiple items
+     * can be selected using <i>Tab</i>. The matching options of this instance are not used, the
+     * backend defines how items are matched.
+     *
+     * @param matcher  Matcher of the items to select results from.
+     * @param maxItems Number of items that can be selected.
+     *                 Set to <i>-1</i> to not limited number of selected items.
+     * @param <T>      Type of the items
+     * @return Selected items
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> List<T> multiSelect(final Matcher<T> matcher, final int maxItems)
+            throws EmptyResultException, IOException, AbortByUserException {
+        final var state = select(matcher, null, Fzf::prepared, true, maxItems);
+        final var selectedItems = state.getSelectedItems();
+        if (selectedItems.isEmpty()) {
+            if (state.getCursorItem() == -1) {
+                throw new EmptyResultException();
             }
+            return List.of(state.getCursorResult().getItem());
         }
 
-        return selectedItems.stream().map(items::get).collect(Collectors.toList());
+        return selectedItems.stream().map(matcher::getItem).collect(Collectors.toList());
+    }
+
+    /**
+     * All items selected entries stand for, including duplicates of deduplicated items.
+     */
+    private static <T> List<T> occurrences(final MatchIndex<T> index, final Set<Integer> entries) {
+        final var items = index.getSourceItems();
+        return entries.stream()
+                .flatMapToInt(entry -> IntStream.of(index.getOccurrences(entry)))
+                .mapToObj(items::get)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -122,129 +297,205 @@ public class Fzf {
      */
     public String select(final List<String> items)
             throws IOException, EmptyResultException, AbortByUserException {
-        final var state = select(items, false, -1);
+        return select(buildIndex(items));
+    }
+
+    /**
+     * Runs fzf for a list of items of any type, matching and showing the key of each item.
+     * Returns the selected item itself or throws an exception.
+     *
+     * @param items        List of items to select result from.
+     * @param keyExtractor Function returning the text of an item, called once per item.
+     * @param <T>          Type of the items
+     * @return Selected item
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> T select(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor
+    ) throws IOException, EmptyResultException, AbortByUserException {
+        return select(buildIndex(items, keyExtractor));
+    }
+
+    /**
+     * Runs fzf for a preprocessed index, e.g. loaded from a snapshot using
+     * {@link MatchIndex#load(java.nio.file.Path)}. Returns a single selected item or throws an
+     * exception. The normalize and case sensitive options of the index are used.
+     *
+     * @param index Index of the items to select result from.
+     * @param <T>   Type of the items
+     * @return Selected item
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> T select(final MatchIndex<T> index)
+            throws IOException, EmptyResultException, AbortByUserException {
+        final var state = select(deduplicate ? index.deduplicate() : index, false, -1);
 
         if (state.getCursorItem() == -1) {
             throw new EmptyResultException();
         }
-        return state.getCursorResult().getText();
+        return state.getCursorResult().getItem();
     }
 
-    private TerminalState select(
-            final List<String> items, final boolean multiSelect, final int maxItems
+    /**
+     * Runs fzf for a live index whose items may change while it's shown. The results of the
+     * current query are updated on each change. Returns a single selected item or throws an
+     * exception. The normalize and case sensitive options of the index are used.
+     *
+     * @param index Live index of the items to select result from.
+     * @param <T>   Type of the items
+     * @return Selected item
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> T select(final LiveIndex<T> index)
+            throws IOException, EmptyResultException, AbortByUserException {
+        return select(liveMatcher(index));
+    }
+
+    /**
+     * Runs fzf for a custom matcher backend, e.g. a
+     * {@link de.gesundkrank.fzf4j.daemon.RemoteMatcher} querying a matcher daemon. Returns a
+     * single selected item or throws an exception. The matching options of this instance are not
+     * used, the backend defines how items are matched.
+     *
+     * @param matcher Matcher of the items to select result from.
+     * @param <T>     Type of the items
+     * @return Selected item
+     * @throws IOException          if terminal interaction has an error
+     * @throws EmptyResultException if no item was selected
+     * @throws AbortByUserException if the user aborts by hitting the escape button
+     */
+    public <T> T select(final Matcher<T> matcher)
+            throws IOException, EmptyResultException, AbortByUserException {
+        final var state = select(matcher, null, Fzf::prepared, false, -1);
+
+        if (state.getCursorItem() == -1) {
+            throw new EmptyResultException();
+        }
+        return state.getCursorResult().getItem();
+    }
+
+    private <T> TerminalState<T> select(
+            final MatchIndex<T> index,
+            final boolean multiSelect,
+            final int maxItems
     )
             throws EmptyResultException, IOException, AbortByUserException {
 
-        if (items == null || items.isEmpty()) {
+        final var fuzzyMatcherV1 = new FuzzyMatcherV1<>(index, orderBy, maxTypos, latencyBudget);
+
+        final IntUnaryOperator occurrenceCounts =
+                showDuplicateCount && index.isDeduplicated() ? index::getOccurrenceCount : null;
+
+        return select(fuzzyMatcherV1, occurrenceCounts, index::prepareAsync, multiSelect, maxItems);
+    }
+
+    private <T> TerminalState<T> select(
+            final Matcher<T> matcher,
+            final IntUnaryOperator occurrenceCounts,
+            final Supplier<? extends Future<?>> prepare,
+            final boolean multiSelect,
+            final int maxItems
+    )
+            throws EmptyResultException, IOException, AbortByUserException {
+
+        if (matcher.size() == 0) {
             throw new EmptyResultException();
         }
 
-        this.fuzzyMatcherV1 = new FuzzyMatcherV1(items, orderBy, normalize, caseSensitive);
-
-        try (final var view = new View(items, reverse, terminalColors)) {
-            final var state = new TerminalState(fuzzyMatcherV1.match(""));
+        try (final var view = new View(
+                renderer.get(), matcher.size(), reverse, terminalColors, preview,
+                occurrenceCounts)) {
+            final var state = new TerminalState<>(matcher.match(""));
+            state.setPageSize(view.pageSize());
+            state.loadAhead();
             view.render(state);
-            return readInputs(view, state, multiSelect, maxItems);
+
+            // The empty query doesn't need preprocessed items, prepare them after the first frame
+            final var preparation = prepare.get();
+            final var jitWarmup = warmup ? warmUp(state.getResults()) : prepared();
+            try (final var search = new Search<>(matcher, state, view)) {
+                return readInputs(view, search, state, multiSelect, maxItems, jitWarmup);
+            } finally {
+                preparation.cancel(false);
+                jitWarmup.cancel(true);
+            }
+        }
+    }
+
+    private <T> LiveMatcher<T> liveMatcher(final LiveIndex<T> index) {
+        return new LiveMatcher<>(index, orderBy, maxTypos, latencyBudget);
+    }
+
+    private Future<?> warmUp(final List<? extends Result<?>> items) {
+        return new JitWarmup(items, this::sampleMatcher).start();
+    }
+
+    private Matcher<String> sampleMatcher(final List<String> sample) {
+        final var index = MatchIndex.build(sample, normalize, caseSensitive);
+        return new FuzzyMatcherV1<>(index, orderBy, maxTypos, latencyBudget);
+    }
+
+    private static Future<?> prepared() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private MatchIndex<String> buildIndex(final List<String> items) throws EmptyResultException {
+        if (fields != null) {
+            return buildIndex(items, Function.identity());
         }
+        return MatchIndex.build(requireItems(items), normalize, caseSensitive);
+    }
+
+    private <T> MatchIndex<T> buildIndex(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor
+    ) throws EmptyResultException {
+        return MatchIndex.build(
+                requireItems(items), keyExtractor, fields, normalize, caseSensitive);
     }
 
-    private TerminalState readInputs(
-            final View view, final TerminalState state, final boolean multiSelect,
-            int maxItems
+    private static <T> List<T> requireItems(final List<T> items) throws EmptyResultException {
+        if (items == null || items.isEmpty()) {
+            throw new EmptyResultException();
+        }
+        return items;
+    }
+
+    private <T> TerminalState<T> readInputs(
+            final View view, final Search<T> search, final TerminalState<T> state,
+            final boolean multiSelect, int maxItems, final Future<?> warmup
     )
             throws IOException, AbortByUserException {
 
         var keyStroke = view.readInput();
+        // Real input needs the CPU the warmup is using
+        warmup.cancel(true);
         var queryBuilder = new StringBuilder();
 
         while (keyStroke.getKeyType() != KeyType.Escape
                && keyStroke.getKeyType() != KeyType.Enter) {
 
-            final var pageSize = view.pageSize();
-            final var numItems = state.getItemsSize();
-            var cursorRow = state.getCursorItem();
-
-            switch (keyStroke.getKeyType()) {
-                case ArrowDown:
-                    final var newSelectedItem =
-                            reverse ? up(numItems, cursorRow)
-                                    : down(numItems, cursorRow);
-                    state.setCursorItem(newSelectedItem);
-                    break;
-                case ArrowUp:
-                    state.setCursorItem(reverse ? down(numItems, cursorRow)
-                                                : up(numItems, cursorRow));
-                    break;
-                case PageDown:
-                    state.setCursorItem(reverse ? pageUp(cursorRow, pageSize)
-                                                : pageDown(
-                                                        state.getItemsSize(),
-                                                        cursorRow, pageSize
-                                                ));
-                    break;
-                case PageUp:
-                    state.setCursorItem(
-                            reverse ? pageDown(state.getItemsSize(), cursorRow, pageSize)
-                                    : pageUp(cursorRow, pageSize));
-                    break;
-                case ArrowLeft:
-                    state.setCursorPosition(Math.max(state.getCursorPosition() - 1, 0));
-                    break;
-                case ArrowRight:
-                    state.setCursorPosition(Math.min(
-                            state.getCursorPosition() + 1,
-                            queryBuilder.length()
-                    ));
-                    break;
-                case Backspace:
-                    if (state.getCursorPosition() >= 1) {
-                        queryBuilder.deleteCharAt(state.getCursorPosition() - 1);
-                        state.setCursorPosition(Math.max(state.getCursorPosition() - 1, 0));
-                        state.setResults(fuzzyMatcherV1.match(queryBuilder.toString()));
-                        state.setQuery(queryBuilder.toString());
-                    }
-                    break;
-                case Delete:
-                    final var cursorPosition = state.getCursorPosition();
-                    if (cursorPosition < queryBuilder.length()) {
-                        queryBuilder.deleteCharAt(cursorPosition);
-                        state.setCursorPosition(
-                                Math.min(cursorPosition, queryBuilder.length()));
-                        state.setResults(fuzzyMatcherV1.match(queryBuilder.toString()));
-                        state.setQuery(queryBuilder.toString());
-                    }
-                    break;
-                case Tab:
-                    if (multiSelect) {
-                        final var localIndex = state.getCursorItem();
-                        final var globalIndex = state.getResults().get(localIndex).getItemIndex();
-                        final var selectedItems = state.getSelectedItems();
-                        if (selectedItems.contains(globalIndex)) {
-                            selectedItems.remove(globalIndex);
-                        } else if (maxItems == -1 || selectedItems.size() < maxItems) {
-                            selectedItems.add(globalIndex);
-                        }
-                    }
-                    break;
-                case Character:
-                    if (keyStroke.isCtrlDown()) {
-                        if (keyStroke.getCharacter() == 'a') {
-                            state.setCursorPosition(0);
-                        } else if (keyStroke.getCharacter() == 'e') {
-                            state.setCursorPosition(queryBuilder.length());
-                        }
-                        break;
-                    }
-
-                    queryBuilder.insert(state.getCursorPosition(), keyStroke.getCharacter());
-                    state.setQuery(queryBuilder.toString());
-                    state.setResults(fuzzyMatcherV1.match(queryBuilder.toString()));
-                    state.setCursorPosition(state.getCursorPosition() + 1);
-                    break;
-                default:
+            final boolean queryChanged;
+            synchronized (state) {
+                queryChanged = handleInput(keyStroke, state, queryBuilder, view, multiSelect,
+                                           maxItems);
+            }
+            if (queryChanged) {
+                search.update(queryBuilder.toString());
             }
+            // Results matched lazily are scanned outside the lock, so rendering isn't blocked
+            state.loadAhead();
 
-            view.render(state);
+            synchronized (state) {
+                view.render(state);
+            }
 
             keyStroke = view.readInput();
         }
@@ -256,6 +507,106 @@ public class Fzf {
         return state;
     }
 
+    /**
+     * Applies a key stroke to the state and returns whether the query changed.
+     */
+    private <T> boolean handleInput(
+            final KeyStroke keyStroke,
+            final TerminalState<T> state,
+            final StringBuilder queryBuilder,
+            final View view,
+            final boolean multiSelect,
+            final int maxItems
+    ) {
+        final var pageSize = view.pageSize();
+        state.setPageSize(pageSize);
+        final var numItems = state.getItemsSize();
+        var cursorRow = state.getCursorItem();
+        var queryChanged = false;
+
+        switch (keyStroke.getKeyType()) {
+            case ArrowDown:
+                final var newSelectedItem =
+                        reverse ? up(numItems, cursorRow)
+                                : down(numItems, cursorRow);
+                state.setCursorItem(newSelectedItem);
+                break;
+            case ArrowUp:
+                state.setCursorItem(reverse ? down(numItems, cursorRow)
+                                            : up(numItems, cursorRow));
+                break;
+            case PageDown:
+                state.setCursorItem(reverse ? pageUp(cursorRow, pageSize)
+                                            : pageDown(
+                                                    state.getItemsSize(),
+                                                    cursorRow, pageSize
+                                            ));
+                break;
+            case PageUp:
+                state.setCursorItem(
+                        reverse ? pageDown(state.getItemsSize(), cursorRow, pageSize)
+                                : pageUp(cursorRow, pageSize));
+                break;
+            case ArrowLeft:
+                state.setCursorPosition(Math.max(state.getCursorPosition() - 1, 0));
+                break;
+            case ArrowRight:
+                state.setCursorPosition(Math.min(
+                        state.getCursorPosition() + 1,
+                        queryBuilder.length()
+                ));
+                break;
+            case Backspace:
+                if (state.getCursorPosition() >= 1) {
+                    queryBuilder.deleteCharAt(state.getCursorPosition() - 1);
+                    state.setCursorPosition(Math.max(state.getCursorPosition() - 1, 0));
+                    state.setQuery(queryBuilder.toString());
+                    queryChanged = true;
+                }
+                break;
+            case Delete:
+                final var cursorPosition = state.getCursorPosition();
+                if (cursorPosition < queryBuilder.length()) {
+                    queryBuilder.deleteCharAt(cursorPosition);
+                    state.setCursorPosition(
+                            Math.min(cursorPosition, queryBuilder.length()));
+                    state.setQuery(queryBuilder.toString());
+                    queryChanged = true;
+                }
+                break;
+            case Tab:
+                if (multiSelect) {
+                    final var localIndex = state.getCursorItem();
+                    final var globalIndex = state.getResults().get(localIndex).getItemIndex();
+                    final var selectedItems = state.getSelectedItems();
+                    if (selectedItems.contains(globalIndex)) {
+                        selectedItems.remove(globalIndex);
+                    } else if (maxItems == -1 || selectedItems.size() < maxItems) {
+                        selectedItems.add(globalIndex);
+                    }
+                }
+                break;
+            case Character:
+                if (keyStroke.isCtrlDown()) {
+                    if (keyStroke.getCharacter() == 'a') {
+                        state.setCursorPosition(0);
+                    } else if (keyStroke.getCharacter() == 'e') {
+                        state.setCursorPosition(queryBuilder.length());
+                    }
+                    break;
+                }
+
+                queryBuilder.insert(state.getCursorPosition(), keyStroke.getCharacter());
+                state.setQuery(queryBuilder.toString());
+                queryChanged = true;
+                state.setCursorPosition(state.getCursorPosition() + 1);
+                break;
+            default:
+        }
+
+        return queryChanged;
+    }
+
     private int up(final int numItems, final int selectedItem) {
         return (numItems + selectedItem - 1) % numItems;
     }
@@ -272,6 +623,154 @@ public class Fzf {
         return Math.min(selectedItem + pageSize, numItems - 1);
     }
 
+    /**
+     * Matches queries in a background thread, so results of large item lists are rendered while
+     * they are still scanned. A new query cancels the search of the previous one.
+     */
+    private static final class Search<T> implements AutoCloseable {
+
+        private final Matcher<T> matcher;
+        private final TerminalState<T> state;
+        private final View view;
+        private final ExecutorService executor = Threads.newExecutor("fzf4j-search", 1);
+        private final ChangeListener changeListener = this::refresh;
+
+        private Future<?> current;
+
+        // Guarded by state
+        private String query = "";
+        private int generation = 0;
+        private boolean firstSnapshot;
+        private boolean waiting;
+
+        private Search(
+                final Matcher<T> matcher,
+                final TerminalState<T> state,
+                final View view
+        ) {
+            this.matcher = matcher;
+            this.state = state;
+            this.view = view;
+            matcher.addChangeListener(changeListener);
+        }
+
+        /**
+         * Starts the search for a query and waits until it's finished or the first snapshot
+         * was published. Later snapshots are rendered by the search thread.
+         */
+        private void update(final String query) {
+            if (current != null) {
+                current.cancel(true);
+            }
+
+            final int queryGeneration;
+            synchronized (state) {
+                this.query = query;
+                queryGeneration = ++generation;
+                firstSnapshot = true;
+                waiting = true;
+            }
+
+            current = executor.submit(() -> search(query, queryGeneration));
+            try {
+                current.get(FuzzyMatcherV1.PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Still scanning, the results found so far are shown
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Matching failed", e.getCause());
+            } finally {
+                synchronized (state) {
+                    waiting = false;
+                }
+            }
+        }
+
+        /**
+         * Matches the current query again after the items changed. The search thread publishes
+         * the new results, keeping the cursor on its item unless the items were renumbered.
+         */
+        private void refresh(final boolean renumbered) {
+            final int queryGeneration;
+            final String refreshedQuery;
+            synchronized (state) {
+                if (renumbered) {
+                    state.getSelectedItems().clear();
+                }
+                view.setTotalItems(matcher.size());
+                refreshedQuery = query;
+                queryGeneration = ++generation;
+                firstSnapshot = renumbered;
+            }
+            try {
+                executor.submit(() -> search(refreshedQuery, queryGeneration));
+            } catch (RejectedExecutionException e) {
+                // Closed concurrently, the selection is over
+            }
+        }
+
+        private void search(final String query, final int queryGeneration) {
+            synchronized (state) {
+                if (queryGeneration != generation) {
+                    // Superseded while it was queued
+                    return;
+                }
+            }
+            final ProgressListener<T> listener = (results, scannedItems, totalItems) ->
+                    publish(queryGeneration, results, (double) scannedItems / totalItems);
+            publish(queryGeneration, matcher.matchLazily(query, listener), 1);
+        }
+
+        private void publish(
+                final int queryGeneration,
+                final List<Result<T>> results,
+                final double scanProgress
+        ) {
+            synchronized (state) {
+                if (queryGeneration != generation) {
+                    return;
+                }
+
+                if (firstSnapshot) {
+                    state.setResults(results);
+                    firstSnapshot = false;
+                } else {
+                    state.updateResults(results);
+                }
+                state.setScanProgress(scanProgress);
+            }
+            state.loadAhead();
+            render(queryGeneration);
+
+            if (results instanceof ResumableResults) {
+                // Show the total once the results in input order are counted
+                ((ResumableResults<T>) results).getTotalCount()
+                        .thenRun(() -> render(queryGeneration));
+            }
+        }
+
+        private void render(final int queryGeneration) {
+            synchronized (state) {
+                // The input thread renders the state once it stops waiting
+                if (queryGeneration != generation || waiting) {
+                    return;
+                }
+                try {
+                    view.render(state);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            matcher.removeChangeListener(changeListener);
+            executor.shutdownNow();
+        }
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -283,9 +782,22 @@ public class Fzf {
         private boolean normalize = false;
         private boolean caseSensitive = false;
         private TerminalColors terminalColors = TerminalColors.DEFAULT_COLORS;
+        private Function<String, List<String>> preview = null;
+        private String delimiter = null;
+        private String nth = null;
+        private boolean deduplicate = false;
+        private boolean showDuplicateCount = false;
+        private int maxTypos = 0;
+        private Duration latencyBudget = Duration.ZERO;
+        private Supplier<? extends Renderer> renderer = LanternaRenderer::new;
+        private boolean warmup = false;
 
         public Fzf build() {
-            return new Fzf(orderBy, reverse, normalize, caseSensitive, terminalColors);
+            final var fields = nth != null ? FieldSelector.parse(delimiter, nth) : null;
+            return new Fzf(
+                    orderBy, reverse, normalize, caseSensitive, terminalColors, preview, fields,
+                    deduplicate, showDuplicateCount, maxTypos, latencyBudget, renderer, warmup
+            );
         }
 
         /**
@@ -339,6 +851,115 @@ public class Fzf {
             this.terminalColors = terminalColors;
             return this;
         }
+
+        /**
+         * Show a preview of the item under the cursor next to the items. Previews are loaded in
+         * background threads and cached, so the loader may be slow.
+         *
+         * @param preview Function loading the lines to show for an item
+         * @return Updated {@link Builder}
+         */
+        public Builder preview(final Function<String, List<String>> preview) {
+            this.preview = preview;
+            return this;
+        }
+
+        /**
+         * Regex separating the fields of an item (default = AWK-style whitespace). Only used
+         * together with {@link #nth(String)}.
+         *
+         * @param delimiter Field delimiter regex
+         * @return Updated {@link Builder}
+         */
+        public Builder delimiter(final String delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * Only match some fields of each item, e.g. {@code 2}, {@code -1} or {@code 2..}. The
+         * whole item is still shown and selected, see {@link FieldSelector}.
+         *
+         * @param nth Comma separated field expressions
+         * @return Updated {@link Builder}
+         */
+        public Builder nth(final String nth) {
+            this.nth = nth;
+            return this;
+        }
+
+        /**
+         * Show identical items only once. Selecting such an item selects all its duplicates,
+         * see {@link MatchIndex#deduplicate()}.
+         *
+         * @return Updated {@link Builder}
+         */
+        public Builder deduplicate() {
+            this.deduplicate = true;
+            return this;
+        }
+
+        /**
+         * Show how often an item occurs next to deduplicated items. Implies
+         * {@link #deduplicate()}.
+         *
+         * @return Updated {@link Builder}
+         */
+        public Builder showDuplicateCount() {
+            this.deduplicate = true;
+            this.showDuplicateCount = true;
+            return this;
+        }
+
+        /**
+         * Also show items that match the query with some typos, ranked below exact matches
+         * (default = 0). Short queries allow fewer typos, see {@link FuzzyMatcherV1}.
+         *
+         * @param maxTypos Maximum number of missing or wrong query characters
+         * @return Updated {@link Builder}
+         */
+        public Builder typos(final int maxTypos) {
+            this.maxTypos = maxTypos;
+            return this;
+        }
+
+        /**
+         * Time each keystroke may take to match, e.g. 16 ms. Time left after the greedy scan is
+         * used to rank the results by their optimal alignment, which is only affordable for
+         * small result sets (default = {@link Duration#ZERO}, greedy only).
+         *
+         * @param latencyBudget Time budget per query
+         * @return Updated {@link Builder}
+         */
+        public Builder latencyBudget(final Duration latencyBudget) {
+            this.latencyBudget = latencyBudget;
+            return this;
+        }
+
+        /**
+         * Draw with a custom renderer (default = {@link LanternaRenderer}), e.g. the lightweight
+         * {@link de.gesundkrank.fzf4j.renderers.AnsiRenderer}. A new renderer is created for each
+         * selection.
+         *
+         * @param renderer Function creating the renderer
+         * @return Updated {@link Builder}
+         */
+        public Builder renderer(final Supplier<? extends Renderer> renderer) {
+            this.renderer = renderer;
+            return this;
+        }
+
+        /**
+         * Warm up the JIT while the unfiltered items are shown, so the first queries aren't
+         * slowed down by interpreted code. A background thread matches and renders queries on a
+         * sample of the items until the first key stroke, see {@link JitWarmup}.
+         *
+         * @return Updated {@link Builder}
+         */
+        public Builder warmup() {
+            this.warmup = true;
+            return this;
+        }
     }
 
 
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.TerminalColors;
+import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.HeadlessRenderer;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Matches and renders queries typed into a sample of the items, so the JIT compiles the matcher
+ * and view before the first key stroke instead of interpreting them for the first queries. The
+ * queries are matched against a matcher over the sample and rendered into a
+ * {@link HeadlessRenderer}, the shown items and the terminal are not touched.
+ */
+public final class JitWarmup implements Runnable {
+
+    static final int SAMPLE_SIZE = 10_000;
+    static final int QUERY_COUNT = 200;
+    static final int MAX_QUERY_LENGTH = 6;
+
+    private static final int COLUMNS = 120;
+    private static final int ROWS = 40;
+
+    private final List<? extends Result<?>> items;
+    private final Function<List<String>, Matcher<String>> matchers;
+
+    /**
+     * Creates a warmup sampling the given items.
+     *
+     * @param items    Items to sample, e.g. the results of the empty query
+     * @param matchers Function creating a matcher over the sampled texts with the settings of
+     *                 the real matcher
+     */
+    public JitWarmup(
+            final List<? extends Result<?>> items,
+            final Function<List<String>, Matcher<String>> matchers
+    ) {
+        this.items = items;
+        this.matchers = matchers;
+    }
+
+    /**
+     * Runs the warmup in a background thread with low priority. Cancelling the returned future
+     * interrupts the warmup, which stops it before its next query or scanned batch.
+     *
+     * @return Future of the warmup
+     */
+    public Future<?> start() {
+        final var task = new FutureTask<>(this, null);
+        Threads.newLowPriorityThread("fzf4j-warmup", task).start();
+        return task;
+    }
+
+    /**
+     * Runs the warmup in the calling thread.
+     *
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted
+     */
+    @Override
+    public void run() {
+        final var sample = sample(items);
+        if (sample.isEmpty()) {
+            return;
+        }
+        final var matcher = matchers.apply(sample);
+        try (final var view = new View(
+                new HeadlessRenderer(COLUMNS, ROWS), sample.size(), false,
+                TerminalColors.DEFAULT_COLORS, null, null)) {
+            final var state = new TerminalState<>(matcher.match(""));
+            for (final var query : queries(sample, QUERY_COUNT)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                state.setQuery(query);
+                state.setCursorPosition(query.length());
+                state.setResults(matcher.match(query));
+                view.render(state);
+                // Lets other virtual threads run on Java 21
+                Thread.yield();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Texts of up to {@link #SAMPLE_SIZE} items spread evenly over all items.
+     */
+    static List<String> sample(final List<? extends Result<?>> items) {
+        final var step = Math.max(1, items.size() / SAMPLE_SIZE);
+        final var sample = new ArrayList<String>(Math.min(items.size(), SAMPLE_SIZE));
+        for (var i = 0; i < items.size() && sample.size() < SAMPLE_SIZE; i += step) {
+            sample.add(items.get(i).getText());
+        }
+        return sample;
+    }
+
+    /**
+     * Queries typed character by character, each query is a subsequence of a sampled text so
+     * it matches at least one item.
+     */
+    static List<String> queries(final List<String> sample, final int count) {
+        final var random = new Random(42);
+        final var queries = new ArrayList<String>(count);
+        while (queries.size() < count) {
+            final var text = sample.get(random.nextInt(sample.size())).strip();
+            final var length = Math.min(text.length(), 1 + random.nextInt(MAX_QUERY_LENGTH));
+            final var query = new StringBuilder(length);
+            for (var i = 0; i < length && queries.size() < count; i++) {
+                final var c = text.charAt(i * text.length() / length);
+                if (!Character.isWhitespace(c)) {
+                    query.append(c);
+                    queries.add(query.toString());
+                }
+            }
+            if (query.length() == 0) {
+                queries.add("");
+            }
+        }
+        return queries;
+    }
+}
@@ -22,14 +22,49 @@
 
 package de.gesundkrank.fzf4j;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
+/**
+ * Normalizes strings by applying NFKD normalization and removing all diacritical marks
+ * afterwards. Only marks of the combining diacritical mark blocks are removed, the vowel signs
+ * and other non-spacing marks of scripts like Devanagari, Hebrew or Thai are kept.
+ *
+ * <p>Strings are normalized one character at a time using a table from character to normalized
+ * characters which is built lazily in blocks of 256 characters. ASCII strings are returned
+ * unchanged without looking at the table at all.
+ *
+ * <p>Instances write normalized text into reusable buffers and keep track of the index in the
+ * original text each normalized character originates from. They are not thread safe.
+ */
 public class Normalizer {
 
-    private static final Pattern diacriticalMarksPattern = Pattern
-            .compile("\\p{Block=CombiningDiacriticalMarks}+");
+    private static final int BLOCK_BITS = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final Set<Character.UnicodeBlock> DIACRITICAL_MARKS = Set.of(
+            Character.UnicodeBlock.COMBINING_DIACRITICAL_MARKS,
+            Character.UnicodeBlock.COMBINING_DIACRITICAL_MARKS_EXTENDED,
+            Character.UnicodeBlock.COMBINING_DIACRITICAL_MARKS_SUPPLEMENT,
+            Character.UnicodeBlock.COMBINING_MARKS_FOR_SYMBOLS,
+            Character.UnicodeBlock.COMBINING_HALF_MARKS
+    );
+
+    /**
+     * Normalized characters of each BMP character, {@code null} if a character is unchanged.
+     */
+    private static final AtomicReferenceArray<char[][]> BLOCKS =
+            new AtomicReferenceArray<>(Character.MAX_VALUE + 1 >> BLOCK_BITS);
+
+    private static final ThreadLocal<Normalizer> NORMALIZERS =
+            ThreadLocal.withInitial(Normalizer::new);
+
+    private char[] chars = new char[64];
+    private int[] sourceIndices = new int[64];
+    private int length;
+    private boolean identity;
 
     /**
      * Normalizes a string by applying NFKD normalization and removing all diacritical marks
@@ -39,12 +74,150 @@ public class Normalizer {
      * @return normalized string
      */
     public static String normalize(final String string) {
-        final var normalizedString = java.text.Normalizer.normalize(
-                string, java.text.Normalizer.Form.NFKD);
-        return diacriticalMarksPattern.matcher(normalizedString).replaceAll("");
+        if (isAscii(string)) {
+            return string;
+        }
+
+        final var normalizer = NORMALIZERS.get();
+        normalizer.apply(string);
+        return normalizer.identity ? string : new String(normalizer.chars, 0, normalizer.length);
     }
 
     public static List<String> normalize(final List<String> strings) {
         return strings.parallelStream().map(Normalizer::normalize).collect(Collectors.toList());
     }
+
+    /**
+     * Normalizes a text into the buffers of this instance. If the text isn't changed by the
+     * normalization {@link #isIdentity()} is true and the buffers might not contain the text.
+     *
+     * @param text to be normalized
+     * @return length of the normalized text
+     */
+    public int apply(final CharSequence text) {
+        length = 0;
+        identity = true;
+
+        if (isAscii(text)) {
+            length = text.length();
+            return length;
+        }
+
+        for (var i = 0; i < text.length(); i++) {
+            final var c = text.charAt(i);
+
+            if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(i + 1))) {
+                append(normalizeCodePoint(text.subSequence(i, i + 2)), i);
+                i++;
+                identity = false;
+                continue;
+            }
+
+            final var normalized = normalizedChars(c);
+            if (normalized == null) {
+                ensureCapacity(length + 1);
+                identity &= length == i;
+                sourceIndices[length] = i;
+                chars[length++] = c;
+            } else {
+                append(normalized, i);
+                identity = false;
+            }
+        }
+
+        identity &= length == text.length();
+        return length;
+    }
+
+    /**
+     * Normalized characters of the last applied text, only valid up to {@link #getLength()}.
+     *
+     * @return Buffer of normalized characters
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Index in the last applied text each normalized character originates from.
+     *
+     * @return Buffer of source indices
+     */
+    public int[] getSourceIndices() {
+        return sourceIndices;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    private void append(final char[] normalized, final int sourceIndex) {
+        ensureCapacity(length + normalized.length);
+        for (final var c : normalized) {
+            sourceIndices[length] = sourceIndex;
+            chars[length++] = c;
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > chars.length) {
+            final var newCapacity = Math.max(capacity, chars.length * 2);
+            chars = Arrays.copyOf(chars, newCapacity);
+            sourceIndices = Arrays.copyOf(sourceIndices, newCapacity);
+        }
+    }
+
+    private static boolean isAscii(final CharSequence text) {
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char[] normalizedChars(final char c) {
+        final var blockIndex = c >> BLOCK_BITS;
+        var block = BLOCKS.get(blockIndex);
+        if (block == null) {
+            block = buildBlock(blockIndex);
+            BLOCKS.compareAndSet(blockIndex, null, block);
+        }
+        return block[c & BLOCK_SIZE - 1];
+    }
+
+    private static char[][] buildBlock(final int blockIndex) {
+        final var block = new char[BLOCK_SIZE][];
+        for (var i = 0; i < BLOCK_SIZE; i++) {
+            final var c = (char) (blockIndex << BLOCK_BITS | i);
+            if (Character.isSurrogate(c)) {
+                continue;
+            }
+            final var normalized = normalizeCodePoint(String.valueOf(c));
+            if (normalized.length != 1 || normalized[0] != c) {
+                block[i] = normalized;
+            }
+        }
+        return block;
+    }
+
+    private static char[] normalizeCodePoint(final CharSequence codePoint) {
+        final var decomposed = java.text.Normalizer.normalize(
+                codePoint, java.text.Normalizer.Form.NFKD);
+        final var builder = new StringBuilder(decomposed.length());
+        var i = 0;
+        while (i < decomposed.length()) {
+            final var c = decomposed.codePointAt(i);
+            if (!DIACRITICAL_MARKS.contains(Character.UnicodeBlock.of(c))) {
+                builder.appendCodePoint(c);
+            }
+            i += Character.charCount(c);
+        }
+        return builder.toString().toCharArray();
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Loads previews of items in background threads. Loaded previews are kept in a bounded LRU cache.
+ * Requesting previews cancels loading previews that aren't requested anymore, e.g. because the
+ * cursor moved on.
+ */
+public class PreviewLoader implements AutoCloseable {
+
+    public static final int CACHE_SIZE = 128;
+    public static final int THREADS = 2;
+
+    private final Function<String, List<String>> loader;
+    private final Runnable onLoaded;
+    private final ExecutorService executor;
+    private final Map<String, List<String>> cache;
+    private final Map<String, Future<?>> pending = new HashMap<>();
+
+    /**
+     * Creates a preview loader.
+     *
+     * @param loader   Function loading the preview lines of an item. Might be slow.
+     * @param onLoaded Called from a background thread after a preview was loaded
+     */
+    public PreviewLoader(final Function<String, List<String>> loader, final Runnable onLoaded) {
+        this.loader = loader;
+        this.onLoaded = onLoaded;
+        this.executor = Threads.newExecutor("fzf4j-preview", THREADS);
+        this.cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, List<String>> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached preview of an item. If it isn't cached yet, loading it is started in the
+     * background.
+     *
+     * @param item Item to show the preview for
+     * @return Preview lines or {@code null} if the preview is still loading
+     */
+    public synchronized List<String> get(final String item) {
+        final var preview = cache.get(item);
+        if (preview == null) {
+            load(item);
+        }
+        return preview;
+    }
+
+    /**
+     * Starts loading the previews of items that will probably be shown next and cancels loading all
+     * other previews that aren't needed anymore.
+     *
+     * @param current Item currently shown
+     * @param items   Items to be prefetched
+     */
+    public synchronized void prefetch(final String current, final Collection<String> items) {
+        pending.entrySet().removeIf(entry -> {
+            final var item = entry.getKey();
+            if (item.equals(current) || items.contains(item)) {
+                return false;
+            }
+            entry.getValue().cancel(true);
+            return true;
+        });
+
+        items.stream().filter(item -> !cache.containsKey(item)).forEach(this::load);
+    }
+
+    private void load(final String item) {
+        if (pending.containsKey(item)) {
+            return;
+        }
+
+        pending.put(item, executor.submit(() -> {
+            List<String> preview;
+            try {
+                preview = loader.apply(item);
+            } catch (RuntimeException e) {
+                preview = List.of("Preview failed: " + e.getMessage());
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            synchronized (this) {
+                pending.remove(item);
+                cache.put(item, preview);
+            }
+            onLoaded.run();
+        }));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
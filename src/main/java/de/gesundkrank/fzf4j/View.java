@@ -23,22 +23,26 @@
 package de.gesundkrank.fzf4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 import com.googlecode.lanterna.SGR;
-import com.googlecode.lanterna.TerminalPosition;
+import com.googlecode.lanterna.Symbols;
 import com.googlecode.lanterna.TextCharacter;
 import com.googlecode.lanterna.TextColor;
 import com.googlecode.lanterna.input.KeyStroke;
-import com.googlecode.lanterna.screen.Screen;
-import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
 
 import de.gesundkrank.fzf4j.models.TerminalColors;
 import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.LanternaRenderer;
+import de.gesundkrank.fzf4j.renderers.Renderer;
+import de.gesundkrank.fzf4j.utils.Threads;
 
 /**
  * Responsible for drawing everything to the terminal
@@ -46,69 +50,207 @@ import de.gesundkrank.fzf4j.models.TerminalState;
 public class View implements AutoCloseable {
 
     public static final int CHECK_RESIZE_INTERVAL_MS = 100;
+    public static final int PREVIEW_PREFETCH_DISTANCE = 2;
+    public static final String ELLIPSIS = "..";
 
-    private final Screen screen;
-    private final int totalItems;
+    private final Renderer renderer;
+    private volatile int totalItems;
     private final boolean reverse;
     private final ScheduledExecutorService executor;
     private final TerminalColors terminalColors;
+    private final PreviewLoader previewLoader;
+    private final IntUnaryOperator occurrenceCounts;
 
     /**
      * Marks the beginning of the drawing window if more items exist than can be shown
      */
     private int drawStart = 0;
 
-    private volatile TerminalState state;
+    private volatile TerminalState<?> state;
 
     public View(
-            final List<String> items,
+            final List<?> items,
             final boolean reverse,
             final TerminalColors terminalColors
+    ) throws IOException {
+        this(items, reverse, terminalColors, null);
+    }
+
+    /**
+     * Creates a view showing a preview of the item under the cursor next to the items.
+     *
+     * @param items          All items
+     * @param reverse        Show the first item at the bottom
+     * @param terminalColors Colors to use
+     * @param preview        Function loading the preview lines of an item or {@code null} to
+     *                       not show a preview
+     * @throws IOException if the terminal can't be initialized
+     */
+    public View(
+            final List<?> items,
+            final boolean reverse,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview
+    ) throws IOException {
+        this(items, reverse, terminalColors, preview, null);
+    }
+
+    /**
+     * Creates a view showing how often each item occurs next to items that occur more than once.
+     *
+     * @param items            All items
+     * @param reverse          Show the first item at the bottom
+     * @param terminalColors   Colors to use
+     * @param preview          Function loading the preview lines of an item or {@code null} to
+     *                         not show a preview
+     * @param occurrenceCounts Number of occurrences of an item by its index or {@code null} to
+     *                         not show counts
+     * @throws IOException if the terminal can't be initialized
+     */
+    public View(
+            final List<?> items,
+            final boolean reverse,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview,
+            final IntUnaryOperator occurrenceCounts
+    ) throws IOException {
+        this(items.size(), reverse, terminalColors, preview, occurrenceCounts);
+    }
+
+    /**
+     * Creates a view for items that are only known by their number, e.g. because a matcher daemon
+     * holds them.
+     *
+     * @param totalItems       Number of all items
+     * @param reverse          Show the first item at the bottom
+     * @param terminalColors   Colors to use
+     * @param preview          Function loading the preview lines of an item or {@code null} to
+     *                         not show a preview
+     * @param occurrenceCounts Number of occurrences of an item by its index or {@code null} to
+     *                         not show counts
+     * @throws IOException if the terminal can't be initialized
+     */
+    public View(
+            final int totalItems,
+            final boolean reverse,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview,
+            final IntUnaryOperator occurrenceCounts
+    ) throws IOException {
+        this(new LanternaRenderer(), totalItems, reverse, terminalColors, preview,
+             occurrenceCounts);
+    }
+
+    /**
+     * Creates a view drawing its frames with a custom renderer.
+     *
+     * @param renderer         Renderer to draw with, started by the view
+     * @param totalItems       Number of all items
+     * @param reverse          Show the first item at the bottom
+     * @param terminalColors   Colors to use
+     * @param preview          Function loading the preview lines of an item or {@code null} to
+     *                         not show a preview
+     * @param occurrenceCounts Number of occurrences of an item by its index or {@code null} to
+     *                         not show counts
+     * @throws IOException if the terminal can't be initialized
+     */
+    public View(
+            final Renderer renderer,
+            final int totalItems,
+            final boolean reverse,
+            final TerminalColors terminalColors,
+            final Function<String, List<String>> preview,
+            final IntUnaryOperator occurrenceCounts
     ) throws IOException {
         this.terminalColors = terminalColors;
-        var defaultTerminalFactory = new DefaultTerminalFactory();
-        this.screen = defaultTerminalFactory.createScreen();
+        this.occurrenceCounts = occurrenceCounts;
+        this.previewLoader = preview != null ? new PreviewLoader(preview, this::renderAsync)
+                                             : null;
+        this.renderer = renderer;
 
-        this.totalItems = items.size();
+        this.totalItems = totalItems;
         this.reverse = reverse;
 
-        executor = Executors.newSingleThreadScheduledExecutor();
+        executor = Executors.newSingleThreadScheduledExecutor(Threads.factory("fzf4j-resize"));
 
         executor.scheduleAtFixedRate(
                 this::renderIfResized, CHECK_RESIZE_INTERVAL_MS, CHECK_RESIZE_INTERVAL_MS,
                 TimeUnit.MILLISECONDS
         );
 
-        screen.startScreen();
+        renderer.start();
+    }
+
+    /**
+     * Updates the number of all items shown in the status line, e.g. after items were added.
+     *
+     * @param totalItems Number of all items
+     */
+    public void setTotalItems(final int totalItems) {
+        this.totalItems = totalItems;
     }
 
     public int pageSize() {
-        return screen.getTerminalSize().getRows() - 3;
+        return renderer.getTerminalSize().getRows() - 3;
     }
 
     public KeyStroke readInput() throws IOException {
-        return screen.readInput();
+        return renderer.readInput();
     }
 
     private void renderIfResized() {
-        if (state != null && screen.doResizeIfNecessary() != null) {
-            try {
-                render();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        final var current = state;
+        if (current == null) {
+            return;
+        }
+        synchronized (current) {
+            if (current == state && renderer.resizeIfNecessary()) {
+                renderUnchecked();
+            }
+        }
+    }
+
+    /**
+     * Renders from a background thread. The state is locked like in the input loop, so the frame
+     * doesn't see a state that is modified halfway.
+     */
+    private void renderAsync() {
+        final var current = state;
+        if (current == null) {
+            return;
+        }
+        synchronized (current) {
+            if (current == state) {
+                renderUnchecked();
             }
         }
     }
 
-    public void render(final TerminalState state) throws IOException {
+    private void renderUnchecked() {
+        try {
+            render();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Renders a state. Callers that share the state with other threads have to hold its lock.
+     *
+     * @param state State to render
+     * @throws IOException if the terminal can't be written
+     */
+    public void render(final TerminalState<?> state) throws IOException {
         this.state = state;
         render();
     }
 
     private synchronized void render() throws IOException {
-        screen.clear();
+        renderer.clear();
 
-        final int rows = screen.getTerminalSize().getRows();
+        final int rows = renderer.getTerminalSize().getRows();
+        final int columns = renderer.getTerminalSize().getColumns();
+        final int listWidth = previewLoader != null ? columns / 2 : columns;
         final int itemsSize = state.getItemsSize();
         final int itemRows = rows - 2;
         final int itemCount = Math.min(itemRows, itemsSize);
@@ -133,8 +275,6 @@ public class View implements AutoCloseable {
         IntStream.range(0, itemRows).forEach(row -> {
             final var itemIndex = reverse ? itemRows - (row + 1) : row;
 
-            final var textGraphics = screen.newTextGraphics();
-
             if (itemIndex < visibleItems.size()) {
                 final var item = visibleItems.get(itemIndex);
                 final var text = item.getText();
@@ -142,27 +282,26 @@ public class View implements AutoCloseable {
                 final var backgroundColor = itemIndex == localSelectedItem
                                             ? terminalColors.getMarkerBackgroundColor()
                                             : TextColor.ANSI.DEFAULT;
-                var posIndex = 0;
 
                 if (itemIndex == localSelectedItem) {
-                    screen.setCharacter(
+                    renderer.setCharacter(
                             0, row, new TextCharacter(
                                     '>',
                                     terminalColors.getMarkerItemColor(),
                                     backgroundColor
                             ));
-                    screen.setCharacter(
+                    renderer.setCharacter(
                             1, row, new TextCharacter(
                                     ' ',
                                     terminalColors.getMarkerItemColor(),
                                     backgroundColor
                             ));
                 } else {
-                    screen.setCharacter(0, row, new TextCharacter(' '));
+                    renderer.setCharacter(0, row, new TextCharacter(' '));
                 }
 
                 if (state.getSelectedItems().contains(item.getItemIndex())) {
-                    screen.setCharacter(
+                    renderer.setCharacter(
                             1, row, new TextCharacter(
                                     '>',
                                     terminalColors.getSelectedItemColor(),
@@ -170,45 +309,139 @@ public class View implements AutoCloseable {
                             ));
                 }
 
-                for (var i = 0; i < item.getText().length(); i++) {
+                final var count = occurrenceCounts != null
+                                  ? occurrenceCounts.applyAsInt(item.getItemIndex())
+                                  : 1;
+                final var countLabel = count > 1 ? " (" + count + ")" : "";
+                renderer.putString(listWidth - countLabel.length(), row, countLabel);
+
+                final var width = listWidth - 2 - countLabel.length();
+                final var offset = horizontalOffset(text.length(), positions, width);
+                final var clipEnd = offset + width < text.length();
+                var posIndex = 0;
+
+                // Only draw the columns inside the viewport, no matter how long the item is
+                for (var column = 0; column < Math.min(width, text.length() - offset); column++) {
+                    final var i = offset + column;
+                    final var ellipsis = offset > 0 && column < ELLIPSIS.length()
+                                         || clipEnd && column >= width - ELLIPSIS.length();
+
+                    while (positions != null && posIndex < positions.length
+                           && positions[posIndex] < i) {
+                        posIndex++;
+                    }
+
                     final TextColor textColor;
-                    if (positions != null && posIndex < positions.length
+                    if (!ellipsis && positions != null && posIndex < positions.length
                         && i == positions[posIndex]) {
                         textColor = terminalColors.getMatchedCharsColor();
-                        posIndex++;
                     } else {
                         textColor = TextColor.ANSI.DEFAULT;
                     }
 
+                    final var c = ellipsis ? '.' : text.charAt(i);
                     final TextCharacter character;
 
                     if (itemIndex == localSelectedItem) {
-                        character = new TextCharacter(
-                                text.charAt(i), textColor, backgroundColor, SGR.BOLD
-                        );
+                        character = new TextCharacter(c, textColor, backgroundColor, SGR.BOLD);
                     } else {
-                        character = new TextCharacter(text.charAt(i), textColor, backgroundColor);
+                        character = new TextCharacter(c, textColor, backgroundColor);
                     }
 
-                    textGraphics.setCharacter(2 + i, row, character);
-
+                    renderer.setCharacter(2 + column, row, character);
                 }
             }
         });
 
-        screen.newTextGraphics()
-                .putString(0, rows - 2, String.format("  %d/%d", itemsSize, totalItems));
+        if (previewLoader != null) {
+            renderPreview(itemRows, listWidth, columns);
+        }
+
+        // Show how much of the items were scanned while partial results are shown
+        // or the matches in input order are still being counted
+        final var scanProgress = state.getScanProgress();
+        final var matchCount = state.getMatchCount();
+        final String status;
+        if (scanProgress < 1) {
+            status = String.format("  %d/%d (%d%%)", itemsSize, totalItems,
+                                   (int) (scanProgress * 100));
+        } else if (matchCount == -1) {
+            status = String.format("  %d+/%d", itemsSize, totalItems);
+        } else {
+            status = String.format("  %d/%d", matchCount, totalItems);
+        }
+        renderer.putString(0, rows - 2, status);
+
+        renderer.putString(0, rows - 1, "> " + state.getQuery());
+        renderer.setCursorPosition(state.getCursorPosition() + 2, rows - 1);
+        renderer.refresh();
+    }
+
+    /**
+     * Calculates the first column of an item to draw. Items that don't fit into the viewport are
+     * scrolled horizontally so that the end of the match is visible. If the match itself doesn't
+     * fit, its beginning is shown.
+     */
+    private static int horizontalOffset(final int length, final int[] positions, final int width) {
+        if (length <= width || positions == null || positions.length == 0) {
+            return 0;
+        }
+
+        final var matchEnd = positions[positions.length - 1] + 1;
+        if (matchEnd <= width - ELLIPSIS.length()) {
+            return 0;
+        }
+
+        final var offset = Math.min(
+                matchEnd - width + 2 * ELLIPSIS.length(), positions[0] - ELLIPSIS.length());
+        return Math.max(Math.min(offset, length - width), 0);
+    }
+
+    private void renderPreview(final int rows, final int left, final int columns) {
+        final var separator = new TextCharacter(Symbols.SINGLE_LINE_VERTICAL);
+        for (var row = 0; row < rows; row++) {
+            renderer.setCharacter(left, row, separator);
+        }
+
+        final var cursor = state.getCursorItem();
+        if (cursor == -1) {
+            return;
+        }
+
+        final var results = state.getResults();
+        final var item = results.get(cursor).getText();
+        final var neighbours = new ArrayList<String>();
+        for (var i = Math.max(cursor - PREVIEW_PREFETCH_DISTANCE, 0);
+             i <= Math.min(cursor + PREVIEW_PREFETCH_DISTANCE, results.size() - 1); i++) {
+            if (i != cursor) {
+                neighbours.add(results.get(i).getText());
+            }
+        }
+        previewLoader.prefetch(item, neighbours);
+
+        final var lines = previewLoader.get(item);
+        if (lines == null) {
+            renderer.putString(left + 2, 0, "Loading...");
+            return;
+        }
 
-        final var textGraphics = screen.newTextGraphics();
-        textGraphics.putString(new TerminalPosition(0, rows - 1), "> " + state.getQuery());
-        screen.setCursorPosition(new TerminalPosition(state.getCursorPosition() + 2, rows - 1));
-        screen.refresh();
+        final var width = columns - left - 2;
+        for (var row = 0; row < Math.min(rows, lines.size()); row++) {
+            final var line = lines.get(row);
+            for (var i = 0; i < Math.min(line.length(), width); i++) {
+                final var c = line.charAt(i);
+                renderer.setCharacter(
+                        left + 2 + i, row, new TextCharacter(Character.isISOControl(c) ? ' ' : c));
+            }
+        }
     }
 
     @Override
     public void close() throws IOException {
+        if (previewLoader != null) {
+            previewLoader.close();
+        }
         executor.shutdownNow();
-        screen.stopScreen();
-        screen.close();
+        renderer.close();
     }
 }
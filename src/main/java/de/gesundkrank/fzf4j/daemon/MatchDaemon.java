@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Keeps preprocessed indexes resident and serves their matches to {@link RemoteMatcher} clients
+ * over a Unix domain socket, so short-lived processes don't pay for building the index and
+ * warming up the JIT on every run. Unix domain sockets require Java 16 or newer.
+ *
+ * <p>Run {@code java -cp fzf4j.jar de.gesundkrank.fzf4j.daemon.MatchDaemon <socket>
+ * <name>=<file>...} to serve the lines of text files. A file can be followed by
+ * {@code :<snapshot>} to reuse its index, see
+ * {@link MatchIndex#open(Path, Path, boolean, boolean)}. With {@code --stdio} instead of a
+ * socket, the daemon serves the process that started it over its standard streams until the
+ * input ends, as the workers of a {@link ShardedMatcher} do.
+ */
+public class MatchDaemon implements AutoCloseable {
+
+    private final Path socket;
+    private final Map<String, Entry> indexes = new ConcurrentHashMap<>();
+    private final ExecutorService connections =
+            Executors.newCachedThreadPool(Threads.factory("fzf4j-daemon-connection"));
+
+    private ServerSocketChannel server;
+    private Thread acceptor;
+
+    static final String STDIO = "--stdio";
+
+    public MatchDaemon(final Path socket) {
+        this.socket = socket;
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || Arrays.stream(args, 1, args.length)
+                .anyMatch(arg -> arg.indexOf('=') < 1 || arg.endsWith("="))) {
+            System.err.println(
+                    "Usage: MatchDaemon <socket>|--stdio <name>=<file>[:<snapshot>]...");
+            System.exit(1);
+        }
+
+        final var stdio = STDIO.equals(args[0]);
+        final var daemon = new MatchDaemon(stdio ? null : Path.of(args[0]));
+        for (var i = 1; i < args.length; i++) {
+            final var separator = args[i].indexOf('=');
+            daemon.add(args[i].substring(0, separator), load(args[i].substring(separator + 1)));
+        }
+
+        if (stdio) {
+            daemon.serve(new FileInputStream(FileDescriptor.in).getChannel(),
+                         new FileOutputStream(FileDescriptor.out).getChannel());
+            return;
+        }
+        daemon.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        daemon.awaitTermination();
+    }
+
+    private static MatchIndex<String> load(final String file) throws IOException {
+        final var separator = file.indexOf(File.pathSeparatorChar);
+        if (separator >= 0) {
+            return MatchIndex.open(Path.of(file.substring(0, separator)),
+                                   Path.of(file.substring(separator + 1)), false, false);
+        }
+        return MatchIndex.build(Files.readAllLines(Path.of(file)), false, false);
+    }
+
+    /**
+     * Serves an index ordering results by score.
+     *
+     * @param name  Name clients use to query the index
+     * @param index Index to serve
+     * @return This daemon
+     */
+    public MatchDaemon add(final String name, final MatchIndex<?> index) {
+        return add(name, index, OrderBy.SCORE);
+    }
+
+    /**
+     * Serves an index. It is preprocessed in the background, so the first queries don't have to.
+     * If that fails, the failure is sent to the clients querying the index instead of results.
+     *
+     * @param name    Name clients use to query the index
+     * @param index   Index to serve
+     * @param orderBy Result ordering
+     * @return This daemon
+     */
+    public MatchDaemon add(final String name, final MatchIndex<?> index, final OrderBy orderBy) {
+        indexes.put(name, new Entry(index, orderBy, index.prepareAsync()));
+        return this;
+    }
+
+    /**
+     * Binds the socket, replacing a stale socket file, and accepts clients in the background.
+     *
+     * @throws IOException if the socket can't be bound
+     */
+    public void start() throws IOException {
+        Files.deleteIfExists(socket);
+        server = UnixSockets.bind(socket);
+        acceptor = Threads.newThread("fzf4j-daemon", this::accept);
+        acceptor.start();
+    }
+
+    /**
+     * Waits until the daemon is closed.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void awaitTermination() throws InterruptedException {
+        acceptor.join();
+    }
+
+    private void accept() {
+        try {
+            while (server.isOpen()) {
+                final var channel = server.accept();
+                connections.execute(() -> serve(channel));
+            }
+        } catch (IOException e) {
+            // The server socket was closed
+        }
+    }
+
+    private void serve(final SocketChannel channel) {
+        try (channel) {
+            serve(channel, channel);
+        } catch (IOException e) {
+            // The client disconnected
+        }
+    }
+
+    /**
+     * Serves the requests of a single client until its input ends.
+     *
+     * @param in  Channel to read requests from
+     * @param out Channel to write responses to
+     * @throws IOException if a channel can't be read or written
+     */
+    public void serve(final ReadableByteChannel in, final WritableByteChannel out)
+            throws IOException {
+        var request = Protocol.read(in);
+        while (request != null) {
+            respond(request).write(out);
+            request = Protocol.read(in);
+        }
+    }
+
+    private Protocol.Frame respond(final ByteBuffer request) {
+        var name = "";
+        try {
+            final var type = request.get();
+            name = Protocol.getString(request);
+            final var entry = indexes.get(name);
+            if (entry == null) {
+                return error("Unknown index " + name);
+            }
+            if (entry.preparation.isCompletedExceptionally()) {
+                return failure(name, entry.preparation.handle((ignored, e) -> e).join());
+            }
+
+            switch (type) {
+                case Protocol.FILTER:
+                    return filter(entry, Protocol.getString(request), request.getInt());
+                case Protocol.SIZE:
+                    return new Protocol.Frame().putByte(Protocol.OK).putInt(entry.index.size());
+                case Protocol.ITEM:
+                    final var text = entry.index.getKeys().get(request.getInt());
+                    return new Protocol.Frame().putByte(Protocol.OK).putString(text);
+                case Protocol.COUNT:
+                    final var count = entry.matcher.count(Protocol.getString(request));
+                    return new Protocol.Frame().putByte(Protocol.OK).putInt(count);
+                default:
+                    return error("Unknown request type " + type);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException e) {
+            return error("Malformed request");
+        } catch (RuntimeException e) {
+            // A chunk needed by the query failed before its background preparation did
+            return failure(name, e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private static Protocol.Frame filter(final Entry entry, final String query, final int limit) {
+        final var results = entry.matcher
+                .matchAll(List.of(query), limit < 0 ? Integer.MAX_VALUE : limit)
+                .get(0);
+
+        final var frame = new Protocol.Frame().putByte(Protocol.OK);
+        final var countPosition = frame.size();
+        frame.putInt(0);
+        var count = 0;
+        for (final var result : results) {
+            // Leave out the remaining results if they might not fit into the frame anymore
+            if (frame.size() + maxEncodedSize(result) > Protocol.MAX_FRAME_SIZE - Byte.BYTES) {
+                break;
+            }
+            count++;
+            frame.putInt(result.getItemIndex())
+                    .putLong(result.getSortKey())
+                    .putInt(result.getScore())
+                    .putInt(result.getStart())
+                    .putInt(result.getEnd())
+                    .putInts(result.getPositions())
+                    .putString(result.getText());
+        }
+        return frame.setInt(countPosition, count).putByte((byte) (count < results.size() ? 1 : 0));
+    }
+
+    private static int maxEncodedSize(final Result<?> result) {
+        final var positions = result.getPositions();
+        // UTF-8 needs at most three bytes per char
+        return 6 * Integer.BYTES + Long.BYTES
+               + (positions != null ? positions.length * Integer.BYTES : 0)
+               + 3 * result.getText().length();
+    }
+
+    private static Protocol.Frame error(final String message) {
+        return new Protocol.Frame().putByte(Protocol.ERROR).putString(message);
+    }
+
+    private static Protocol.Frame failure(final String name, final Throwable cause) {
+        return error("Index " + name + " can't be prepared: " + cause);
+    }
+
+    /**
+     * Stops accepting clients, closes all connections and removes the socket file.
+     */
+    @Override
+    public void close() {
+        try {
+            if (server != null) {
+                server.close();
+            }
+            connections.shutdownNow();
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            // The socket file is replaced on the next start
+        }
+    }
+
+    /**
+     * Served index and its matcher.
+     */
+    private static final class Entry {
+
+        private final MatchIndex<?> index;
+        private final FuzzyMatcherV1<?> matcher;
+        private final CompletableFuture<Void> preparation;
+
+        private Entry(
+                final MatchIndex<?> index,
+                final OrderBy orderBy,
+                final CompletableFuture<Void> preparation
+        ) {
+            this.index = index;
+            this.matcher = new FuzzyMatcherV1<>(index, orderBy);
+            this.preparation = preparation;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary protocol between {@link MatchDaemon} and {@link RemoteMatcher}. Each message is a frame
+ * of its length as int followed by the payload. Requests start with their type, responses with
+ * their status followed by an error message or the type specific values:
+ *
+ * <pre>
+ * FILTER  index, query, limit  -&gt; count, count * (item index, sort key, score, start, end,
+ *                                                 positions, text), cut
+ * SIZE    index                -&gt; size
+ * ITEM    index, item index    -&gt; text
+ * COUNT   index, query         -&gt; count
+ * </pre>
+ *
+ * <p>Strings are encoded as length followed by their UTF-8 bytes, int arrays as length followed
+ * by their values, {@code null} as length -1. All numbers are big endian. Filter responses only
+ * hold as many of the best results as fit into a frame, {@code cut} is 1 if results were left
+ * out for that reason and 0 otherwise.
+ */
+final class Protocol {
+
+    static final byte FILTER = 1;
+    static final byte SIZE = 2;
+    static final byte ITEM = 3;
+    static final byte COUNT = 4;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int MAX_FRAME_SIZE = 64 << 20;
+
+    private static final int INITIAL_FRAME_SIZE = 256;
+
+    private Protocol() {
+    }
+
+    /**
+     * Reads the payload of the next frame.
+     *
+     * @param channel Channel to read from
+     * @return Payload, or {@code null} if the channel was closed before the next frame
+     * @throws IOException if the channel fails or the frame is incomplete or too large
+     */
+    static ByteBuffer read(final ReadableByteChannel channel) throws IOException {
+        final var header = ByteBuffer.allocate(Integer.BYTES);
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+
+        final var length = header.flip().getInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        final var payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, false);
+        return payload.flip();
+    }
+
+    private static boolean readFully(
+            final ReadableByteChannel channel,
+            final ByteBuffer buffer,
+            final boolean endAllowed
+    ) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                if (endAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Incomplete frame");
+            }
+        }
+        return true;
+    }
+
+    static String getString(final ByteBuffer buffer) {
+        final var length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int[] getInts(final ByteBuffer buffer) {
+        final var length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining() / Integer.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        final var values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Frame under construction, growing its buffer as values are added.
+     */
+    static final class Frame {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_FRAME_SIZE)
+                .position(Integer.BYTES);
+
+        Frame putByte(final byte value) {
+            ensureRemaining(Byte.BYTES).put(value);
+            return this;
+        }
+
+        Frame putInt(final int value) {
+            ensureRemaining(Integer.BYTES).putInt(value);
+            return this;
+        }
+
+        Frame putLong(final long value) {
+            ensureRemaining(Long.BYTES).putLong(value);
+            return this;
+        }
+
+        Frame putString(final String value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            final var bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureRemaining(bytes.length).put(bytes);
+            return this;
+        }
+
+        Frame putInts(final int[] values) {
+            if (values == null) {
+                return putInt(-1);
+            }
+            putInt(values.length);
+            ensureRemaining(values.length * Integer.BYTES).asIntBuffer().put(values);
+            buffer.position(buffer.position() + values.length * Integer.BYTES);
+            return this;
+        }
+
+        /**
+         * Overwrites an int that was already added.
+         *
+         * @param position Position of the value in the payload, see {@link #size()}
+         * @param value    New value
+         * @return This frame
+         */
+        Frame setInt(final int position, final int value) {
+            buffer.putInt(Integer.BYTES + position, value);
+            return this;
+        }
+
+        /**
+         * Size of the payload added so far.
+         *
+         * @return Payload size in bytes
+         */
+        int size() {
+            return buffer.position() - Integer.BYTES;
+        }
+
+        private ByteBuffer ensureRemaining(final int bytes) {
+            if (buffer.remaining() < bytes) {
+                final var grown = ByteBuffer.allocate(
+                        Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer = grown.put(buffer.flip());
+            }
+            return buffer;
+        }
+
+        /**
+         * Writes the frame with its length.
+         *
+         * @param channel Channel to write to
+         * @throws IOException if the channel fails
+         */
+        void write(final WritableByteChannel channel) throws IOException {
+            buffer.flip();
+            buffer.putInt(0, buffer.limit() - Integer.BYTES);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * {@link Matcher} backend querying an index served by a {@link MatchDaemon}, so a short-lived
+ * process can run {@link de.gesundkrank.fzf4j.Fzf#select(Matcher)} without building the index.
+ * Only the best {@code limit} results of each query are transferred, all matches are then
+ * counted in the background over a second connection. Unix domain sockets require Java 16 or
+ * newer.
+ */
+public class RemoteMatcher implements Matcher<String>, AutoCloseable {
+
+    private final Path socket;
+    private final String index;
+    private final int limit;
+
+    private final Connection connection = new Connection();
+    private final Connection countConnection = new Connection();
+    private volatile int size = -1;
+
+    /**
+     * Creates a matcher connecting to the daemon on its first request.
+     *
+     * @param socket Path of the daemon's socket file
+     * @param index  Name of the index to query
+     * @param limit  Maximum number of results per query, -1 for all results
+     */
+    public RemoteMatcher(final Path socket, final String index, final int limit) {
+        this.socket = socket;
+        this.index = index;
+        this.limit = limit;
+    }
+
+    /**
+     * Matches the pattern and returns the best {@code limit} results. If more items might match,
+     * the results are {@link ResumableResults} whose total is counted in a background thread
+     * with low priority.
+     *
+     * @param pattern Pattern to match, all items are returned for the empty pattern
+     * @return Ranked results
+     */
+    @Override
+    public List<Result<String>> match(final String pattern) {
+        final var response = filterResponse(pattern, limit);
+        final var results = results(response, 0);
+        if (!isCut(response) && (limit < 0 || results.size() < limit)) {
+            return results;
+        }
+        final var topResults = new TopResults(results);
+        countAsync(pattern, topResults.getTotalCount());
+        return topResults;
+    }
+
+    /**
+     * Counts the matches over the count connection, so counting never delays the next query.
+     * Counts still queued when the future is cancelled are skipped.
+     */
+    private void countAsync(final String pattern, final CompletableFuture<Integer> totalCount) {
+        final var thread = Threads.newThread("fzf4j-remote-count", () -> {
+            try {
+                if (!totalCount.isDone()) {
+                    totalCount.complete(count(countConnection, pattern));
+                }
+            } catch (RuntimeException e) {
+                totalCount.completeExceptionally(e);
+            }
+        });
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Matches all items of the index and returns the best results.
+     *
+     * @param query Pattern to match
+     * @param limit Maximum number of results, -1 for all results
+     * @return Ranked results, the items are their texts
+     */
+    public List<Result<String>> filter(final String query, final int limit) {
+        return results(filterResponse(query, limit), 0);
+    }
+
+    private ByteBuffer filterResponse(final String query, final int limit) {
+        return connection.request(new Protocol.Frame()
+                .putByte(Protocol.FILTER)
+                .putString(index)
+                .putString(query)
+                .putInt(limit));
+    }
+
+    /**
+     * Reads the results of a filter response.
+     *
+     * @param response Payload of the response after its status
+     * @param offset   Offset added to the item indices, e.g. of a shard
+     * @return Ranked results
+     */
+    static List<Result<String>> results(final ByteBuffer response, final int offset) {
+        final var count = response.getInt();
+        final var results = new ArrayList<Result<String>>(count);
+        for (var i = 0; i < count; i++) {
+            final var itemIndex = offset + response.getInt();
+            final var sortKey = response.getLong();
+            final var score = response.getInt();
+            final var start = response.getInt();
+            final var end = response.getInt();
+            final var positions = Protocol.getInts(response);
+            final var text = Protocol.getString(response);
+            results.add(new Result<>(text, text, start, end, score, positions, itemIndex, sortKey));
+        }
+        return results;
+    }
+
+    /**
+     * Reads whether results of a filter response were left out because they didn't fit into
+     * the frame.
+     *
+     * @param response Payload of the response after its results
+     * @return {@code true} if results are missing
+     */
+    static boolean isCut(final ByteBuffer response) {
+        return response.get() != 0;
+    }
+
+    @Override
+    public int count(final String pattern) {
+        return count(connection, pattern);
+    }
+
+    private int count(final Connection countingConnection, final String pattern) {
+        return countingConnection.request(new Protocol.Frame()
+                .putByte(Protocol.COUNT)
+                .putString(index)
+                .putString(pattern)).getInt();
+    }
+
+    @Override
+    public int size() {
+        if (size == -1) {
+            size = connection.request(
+                    new Protocol.Frame().putByte(Protocol.SIZE).putString(index)).getInt();
+        }
+        return size;
+    }
+
+    @Override
+    public String getItem(final int itemIndex) {
+        final var response = connection.request(new Protocol.Frame()
+                .putByte(Protocol.ITEM)
+                .putString(index)
+                .putInt(itemIndex));
+        return Protocol.getString(response);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            connection.close();
+        } finally {
+            countConnection.close();
+        }
+    }
+
+    /**
+     * Connection to the daemon, opened on the first request and reopened after it was closed.
+     * Requests lock instead of synchronizing, so a virtual thread waiting for the daemon doesn't
+     * pin its carrier thread.
+     */
+    private final class Connection {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile SocketChannel channel;
+
+        /**
+         * Sends a request and returns the payload of its response after the status.
+         */
+        private ByteBuffer request(final Protocol.Frame request) {
+            lock.lock();
+            try {
+                if (channel == null || !channel.isOpen()) {
+                    channel = UnixSockets.connect(socket);
+                }
+                request.write(channel);
+
+                final var response = Protocol.read(channel);
+                if (response == null) {
+                    throw new EOFException("Daemon closed the connection");
+                }
+                if (response.get() == Protocol.ERROR) {
+                    throw new IOException(Protocol.getString(response));
+                }
+                return response;
+            } catch (ClosedByInterruptException e) {
+                // The channel is closed, the next request reconnects
+                throw new CancellationException("Request interrupted");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Closes the channel without locking, a pending request fails instead of delaying this.
+         */
+        private void close() throws IOException {
+            final var current = channel;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+}
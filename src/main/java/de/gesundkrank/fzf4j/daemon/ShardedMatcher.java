@@ -0,0 +1,527 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.utils.ResultComparator;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * {@link Matcher} backend splitting the lines of a file into shards, each matched by a local
+ * worker JVM, so corpora too large for one heap can be searched with
+ * {@link de.gesundkrank.fzf4j.Fzf#select(Matcher)}. Every worker runs a {@link MatchDaemon} on
+ * the snapshot of its shard and serves it over its standard streams. The best {@code limit}
+ * results of the shards are merged in the order of {@link ResultComparator}, so they equal the
+ * best results of a single index over all lines.
+ *
+ * <p>Shard files and snapshots are kept in a directory and reused while the source file doesn't
+ * change. The workers stop when the matcher is closed or its process exits.
+ */
+public class ShardedMatcher implements Matcher<String>, AutoCloseable {
+
+    private static final String INDEX = "shard";
+    private static final String SHARD_PREFIX = "shard-";
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final List<Worker> workers;
+    private final int[] offsets;
+    private final int limit;
+
+    private volatile CompletableFuture<Integer> pendingCount = new CompletableFuture<>();
+
+    private ShardedMatcher(final List<Worker> workers, final int limit) {
+        this.workers = workers;
+        this.limit = limit;
+
+        // The workers load their shards in parallel, the sizes are known once all are ready
+        this.offsets = new int[workers.size() + 1];
+        for (var shard = 0; shard < workers.size(); shard++) {
+            final var worker = workers.get(shard);
+            final var size = await(worker.submit(() -> worker.request(sizeRequest()))).getInt();
+            offsets[shard + 1] = offsets[shard] + size;
+        }
+    }
+
+    /**
+     * Splits the lines of a file into shards and starts a worker JVM for each of them. Workers
+     * inherit the class path of this process.
+     *
+     * @param source     File with one item per line
+     * @param directory  Directory for the shard files, their snapshots and the workers' logs
+     * @param shards     Number of shards and workers
+     * @param limit      Maximum number of results per query, -1 for all results
+     * @param jvmOptions Options of the worker JVMs, e.g. {@code -Xmx4g}
+     * @return Matcher over all lines, ready once all workers loaded their shards
+     * @throws IOException if the source can't be split or a worker can't be started
+     */
+    public static ShardedMatcher open(
+            final Path source,
+            final Path directory,
+            final int shards,
+            final int limit,
+            final List<String> jvmOptions
+    ) throws IOException {
+        final var files = split(source, directory, shards);
+        final var workers = new ArrayList<Worker>(shards);
+        try {
+            for (final var file : files) {
+                workers.add(Worker.start(file, jvmOptions));
+            }
+            return new ShardedMatcher(workers, limit);
+        } catch (IOException | RuntimeException e) {
+            workers.forEach(Worker::close);
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the lines of a file into shards of about equal size. Shards are named after the path
+     * of the file and the version they were split from. Shards split from the same version are
+     * reused, shards of other versions of the file are deleted, shards of other files are kept.
+     */
+    static List<Path> split(final Path source, final Path directory, final int shards)
+            throws IOException {
+        final var prefix = String.format(
+                "%s%08x-", SHARD_PREFIX, source.toAbsolutePath().normalize().toString().hashCode());
+        final var name = String.format(
+                "%s%016x-of-%d-", prefix, MatchIndex.fingerprint(source), shards);
+        final var files = new ArrayList<Path>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            files.add(directory.resolve(name + shard + ".txt"));
+        }
+        if (files.stream().allMatch(Files::exists)) {
+            return files;
+        }
+
+        Files.createDirectories(directory);
+        try (final var stale = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (final var file : stale) {
+                Files.delete(file);
+            }
+        }
+
+        final var shardSize = Files.size(source) / shards + 1;
+        try (final var reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            for (var shard = 0; shard < shards; shard++) {
+                writeShard(reader, files.get(shard), shard < shards - 1 ? shardSize : -1);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Writes the next lines of a reader to a shard file until their UTF-8 encoding reaches the
+     * given number of bytes, -1 for all remaining lines. The file is replaced atomically.
+     */
+    private static void writeShard(final BufferedReader reader, final Path file, final long size)
+            throws IOException {
+        final var temporary = Files.createTempFile(file.getParent(), "split-", ".tmp");
+        try (final var writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            var written = 0L;
+            String line;
+            while ((size < 0 || written < size) && (line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.write('\n');
+                written += utf8Length(line) + 1;
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int utf8Length(final String line) {
+        var length = line.length();
+        for (var i = 0; i < line.length(); i++) {
+            final var c = line.charAt(i);
+            if (c >= 0x800 && !Character.isSurrogate(c)) {
+                length += 2;
+            } else if (c >= 0x80) {
+                // Surrogates take two bytes each, four for the pair
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Matches the pattern on all shards in parallel and merges their best {@code limit}
+     * results. If more items might match, the results are {@link ResumableResults} whose total
+     * is counted by the workers after the query.
+     *
+     * @param pattern Pattern to match, all items are returned for the empty pattern
+     * @return Ranked results
+     */
+    @Override
+    public List<Result<String>> match(final String pattern) {
+        // Counts of the previous query still queued on the workers are skipped
+        pendingCount.cancel(false);
+
+        final var responses = new ArrayList<CompletableFuture<ByteBuffer>>(workers.size());
+        for (final var worker : workers) {
+            responses.add(worker.submit(() -> worker.request(filterRequest(pattern))));
+        }
+        final var shardResults = new ArrayList<List<Result<String>>>(workers.size());
+        final var cut = new boolean[workers.size()];
+        var truncated = false;
+        var total = 0;
+        for (var shard = 0; shard < workers.size(); shard++) {
+            final var response = await(responses.get(shard));
+            final var results = RemoteMatcher.results(response, offsets[shard]);
+            cut[shard] = RemoteMatcher.isCut(response);
+            truncated |= cut[shard] || limit >= 0 && results.size() == limit;
+            total += results.size();
+            shardResults.add(results);
+        }
+
+        // Items of the empty pattern are in input order, which is the order of the shards
+        final var results = pattern.isEmpty() ? concat(shardResults, cut, limit)
+                                              : merge(shardResults, cut, limit);
+        if (pattern.isEmpty() && results.size() < size()) {
+            return topResults(results, CompletableFuture.completedFuture(size()));
+        }
+        if (truncated) {
+            pendingCount = countAsync(pattern);
+            return topResults(results, pendingCount);
+        }
+        if (results.size() < total) {
+            return topResults(results, CompletableFuture.completedFuture(total));
+        }
+        return results;
+    }
+
+    private static List<Result<String>> topResults(
+            final List<Result<String>> results,
+            final CompletableFuture<Integer> count
+    ) {
+        final var topResults = new TopResults(results);
+        final var totalCount = topResults.getTotalCount();
+        count.whenComplete((total, error) -> complete(totalCount, total, error));
+        return topResults;
+    }
+
+    private static void complete(
+            final CompletableFuture<Integer> count,
+            final Integer total,
+            final Throwable error
+    ) {
+        if (error != null) {
+            count.completeExceptionally(error);
+        } else {
+            count.complete(total);
+        }
+    }
+
+    /**
+     * Best results of all shards by a k-way merge of their ranked results. Once the results of a
+     * cut shard are used up, the missing ones might rank before the remaining results of other
+     * shards, so the merge stops there.
+     */
+    static List<Result<String>> merge(
+            final List<List<Result<String>>> shards,
+            final boolean[] cut,
+            final int limit
+    ) {
+        final var merged = new ArrayList<Result<String>>();
+        final var heads = new PriorityQueue<Cursor>(
+                Math.max(1, shards.size()),
+                Comparator.comparing(Cursor::head, ResultComparator.INSTANCE));
+        for (var shard = 0; shard < shards.size(); shard++) {
+            final var results = shards.get(shard);
+            if (!results.isEmpty()) {
+                heads.add(new Cursor(results, cut[shard]));
+            } else if (cut[shard]) {
+                return merged;
+            }
+        }
+
+        while (!heads.isEmpty() && (limit < 0 || merged.size() < limit)) {
+            final var cursor = heads.poll();
+            merged.add(cursor.head());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            } else if (cursor.cut) {
+                break;
+            }
+        }
+        return merged;
+    }
+
+    private static List<Result<String>> concat(
+            final List<List<Result<String>>> shards,
+            final boolean[] cut,
+            final int limit
+    ) {
+        final var concatenated = new ArrayList<Result<String>>();
+        for (var shard = 0; shard < shards.size(); shard++) {
+            for (final var result : shards.get(shard)) {
+                if (limit >= 0 && concatenated.size() == limit) {
+                    return concatenated;
+                }
+                concatenated.add(result);
+            }
+            // Items after the ones left out of a cut shard would leave a gap
+            if (cut[shard]) {
+                break;
+            }
+        }
+        return concatenated;
+    }
+
+    @Override
+    public int count(final String pattern) {
+        return await(countAsync(pattern));
+    }
+
+    /**
+     * Counts the matches of all shards. Counts of a query that was superseded before a worker
+     * got to it are skipped, so they don't delay the next query.
+     */
+    private CompletableFuture<Integer> countAsync(final String pattern) {
+        final var count = new CompletableFuture<Integer>();
+        var sum = CompletableFuture.completedFuture(0);
+        for (final var worker : workers) {
+            final var shardCount =
+                    worker.submit(() -> count.isDone() ? 0 : countShard(worker, pattern));
+            sum = sum.thenCombine(shardCount, Integer::sum);
+        }
+        sum.whenComplete((total, error) -> complete(count, total, error));
+        return count;
+    }
+
+    private static int countShard(final Worker worker, final String pattern) {
+        return worker.request(new Protocol.Frame()
+                .putByte(Protocol.COUNT)
+                .putString(INDEX)
+                .putString(pattern)).getInt();
+    }
+
+    @Override
+    public int size() {
+        return offsets[workers.size()];
+    }
+
+    @Override
+    public String getItem(final int itemIndex) {
+        final var position = Arrays.binarySearch(offsets, itemIndex);
+        final var shard = position >= 0 ? position : -position - 2;
+        final var worker = workers.get(shard);
+        final var response = await(worker.submit(() -> worker.request(new Protocol.Frame()
+                .putByte(Protocol.ITEM)
+                .putString(INDEX)
+                .putInt(itemIndex - offsets[shard]))));
+        return Protocol.getString(response);
+    }
+
+    private Protocol.Frame filterRequest(final String pattern) {
+        return new Protocol.Frame()
+                .putByte(Protocol.FILTER)
+                .putString(INDEX)
+                .putString(pattern)
+                .putInt(limit);
+    }
+
+    private static Protocol.Frame sizeRequest() {
+        return new Protocol.Frame().putByte(Protocol.SIZE).putString(INDEX);
+    }
+
+    /**
+     * Waits for a response. An interrupted caller stops waiting, the worker still completes the
+     * request, so its pipe stays in sync.
+     */
+    private static <V> V await(final CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Request interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Request failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stops the workers by closing their input.
+     */
+    @Override
+    public void close() {
+        pendingCount.cancel(false);
+        workers.forEach(Worker::close);
+    }
+
+    /**
+     * Position in the ranked results of a shard.
+     */
+    private static final class Cursor {
+
+        private final List<Result<String>> results;
+        private final boolean cut;
+        private int position = 0;
+
+        private Cursor(final List<Result<String>> results, final boolean cut) {
+            this.results = results;
+            this.cut = cut;
+        }
+
+        private Result<String> head() {
+            return results.get(position);
+        }
+
+        private boolean advance() {
+            return ++position < results.size();
+        }
+    }
+
+    /**
+     * Worker JVM serving a shard over its standard streams. Requests are sent by a single thread
+     * in the order they were submitted.
+     */
+    private static final class Worker implements AutoCloseable {
+
+        private final Process process;
+        private final Path log;
+        private final OutputStream out;
+        private final WritableByteChannel requests;
+        private final ReadableByteChannel in;
+        private final ExecutorService executor = Threads.newExecutor("fzf4j-shard", 1);
+
+        private Worker(final Process process, final Path log) {
+            this.process = process;
+            this.log = log;
+            this.out = process.getOutputStream();
+            this.requests = Channels.newChannel(out);
+            this.in = Channels.newChannel(process.getInputStream());
+        }
+
+        private static Worker start(final Path shard, final List<String> jvmOptions)
+                throws IOException {
+            final var fileName = shard.getFileName().toString();
+            final var baseName = fileName.substring(0, fileName.length() - ".txt".length());
+            final var snapshot = shard.resolveSibling(baseName + ".idx");
+            final var log = shard.resolveSibling(baseName + ".log");
+
+            final var command = new ArrayList<String>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmOptions);
+            command.add("-cp");
+            command.add(classPath());
+            command.add(MatchDaemon.class.getName());
+            command.add(MatchDaemon.STDIO);
+            command.add(INDEX + "=" + shard + File.pathSeparator + snapshot);
+
+            final var process = new ProcessBuilder(command)
+                    .redirectError(log.toFile())
+                    .start();
+            return new Worker(process, log);
+        }
+
+        /**
+         * Class path of this process and the location of fzf4j, which differ if fzf4j was
+         * loaded by a custom class loader.
+         */
+        private static String classPath() {
+            final var codeSource = MatchDaemon.class.getProtectionDomain().getCodeSource();
+            final var classPath = System.getProperty("java.class.path");
+            if (codeSource == null) {
+                return classPath;
+            }
+            try {
+                return Path.of(codeSource.getLocation().toURI()) + File.pathSeparator + classPath;
+            } catch (URISyntaxException e) {
+                return classPath;
+            }
+        }
+
+        private <V> CompletableFuture<V> submit(final Supplier<V> request) {
+            return CompletableFuture.supplyAsync(request, executor);
+        }
+
+        /**
+         * Sends a request and returns the payload of its response after the status. Only called
+         * by the worker's thread.
+         */
+        private ByteBuffer request(final Protocol.Frame request) {
+            try {
+                request.write(requests);
+                out.flush();
+
+                final var response = Protocol.read(in);
+                if (response == null) {
+                    throw new IOException("Worker exited, see " + log);
+                }
+                if (response.get() == Protocol.ERROR) {
+                    throw new IOException(Protocol.getString(response));
+                }
+                return response;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            try {
+                out.close();
+                if (!process.waitFor(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    process.destroy();
+                }
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+/**
+ * Best results of a query that has more matches than were transferred. The matcher completes
+ * the total count once it knows it.
+ */
+final class TopResults extends AbstractList<Result<String>>
+        implements ResumableResults<String>, RandomAccess {
+
+    private final List<Result<String>> results;
+    private final CompletableFuture<Integer> totalCount = new CompletableFuture<>();
+
+    TopResults(final List<Result<String>> results) {
+        this.results = results;
+    }
+
+    @Override
+    public Result<String> get(final int index) {
+        return results.get(index);
+    }
+
+    @Override
+    public int size() {
+        return results.size();
+    }
+
+    @Override
+    public void resume(final int count) {
+        // Only the best results are transferred
+    }
+
+    @Override
+    public boolean isComplete() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Integer> getTotalCount() {
+        return totalCount;
+    }
+}
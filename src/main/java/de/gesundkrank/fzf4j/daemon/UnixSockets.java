@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Opens Unix domain socket channels. They were added in Java 16, so the classes are looked up
+ * reflectively while the library still targets Java 11.
+ */
+final class UnixSockets {
+
+    private static final Method ADDRESS_OF;
+    private static final Method OPEN_SERVER;
+    private static final ProtocolFamily UNIX;
+
+    static {
+        Method addressOf = null;
+        Method openServer = null;
+        ProtocolFamily unix = null;
+        try {
+            addressOf = Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", Path.class);
+            openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+            unix = StandardProtocolFamily.valueOf("UNIX");
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            // Java 15 or older
+            addressOf = null;
+        }
+        ADDRESS_OF = addressOf;
+        OPEN_SERVER = openServer;
+        UNIX = unix;
+    }
+
+    private UnixSockets() {
+    }
+
+    /**
+     * Whether Unix domain sockets are supported by the running Java version.
+     *
+     * @return {@code true} if sockets can be opened
+     */
+    static boolean isSupported() {
+        return ADDRESS_OF != null;
+    }
+
+    /**
+     * Binds a server socket to a path.
+     *
+     * @param socket Path of the socket file
+     * @return Bound server channel
+     * @throws IOException if the socket can't be bound
+     */
+    static ServerSocketChannel bind(final Path socket) throws IOException {
+        final var address = address(socket);
+        final var channel = (ServerSocketChannel) invoke(OPEN_SERVER, UNIX);
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Connects to a server socket.
+     *
+     * @param socket Path of the socket file
+     * @return Connected channel
+     * @throws IOException if the socket can't be connected
+     */
+    static SocketChannel connect(final Path socket) throws IOException {
+        return SocketChannel.open(address(socket));
+    }
+
+    private static SocketAddress address(final Path socket) throws IOException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16");
+        }
+        return (SocketAddress) invoke(ADDRESS_OF, socket);
+    }
+
+    private static Object invoke(final Method method, final Object argument) throws IOException {
+        try {
+            return method.invoke(null, argument);
+        } catch (InvocationTargetException e) {
+            final var cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
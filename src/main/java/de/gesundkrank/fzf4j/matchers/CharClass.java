@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+/**
+ * Character classes used for bonus calculation. Classes are stored as bytes so they can be
+ * precomputed per character in a {@link MatchIndex}.
+ */
+final class CharClass {
+
+    static final byte LOWER = 0;
+    static final byte UPPER = 1;
+    static final byte LETTER = 2;
+    static final byte NUMBER = 3;
+    static final byte NON_WORD = 4;
+
+    private CharClass() {
+    }
+
+    static byte forChar(char c) {
+        if (Character.isLowerCase(c)) {
+            return LOWER;
+        } else if (Character.isUpperCase(c)) {
+            return UPPER;
+        } else if (Character.isDigit(c)) {
+            return NUMBER;
+        } else if (Character.isLetter(c)) {
+            return LETTER;
+        }
+        return NON_WORD;
+    }
+}
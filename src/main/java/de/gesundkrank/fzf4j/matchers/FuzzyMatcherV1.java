@@ -22,21 +22,36 @@
 
 package de.gesundkrank.fzf4j.matchers;
 
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import de.gesundkrank.fzf4j.Normalizer;
 import de.gesundkrank.fzf4j.models.OrderBy;
 import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
 import de.gesundkrank.fzf4j.utils.ResultComparator;
+import de.gesundkrank.fzf4j.utils.ResultSorter;
+import de.gesundkrank.fzf4j.utils.Threads;
 
 
 /**
  * Class to filter and rank and items
  * Based on: https://github.com/junegunn/fzf/blob/master/src/algo/algo.go
+ *
+ * @param <T> Type of the matched items
  */
-public class FuzzyMatcherV1 {
+public class FuzzyMatcherV1<T> implements Matcher<T> {
 
     static final int SCORE_MATCH = 16;
     static final int SCORE_GAP_START = -3;
@@ -47,127 +62,761 @@ public class FuzzyMatcherV1 {
     static final int BONUS_CAMEL_123 = BONUS_BOUNDARY + SCORE_GAP_EXTENSION;
     static final int BONUS_CONSECUTIVE = -(SCORE_GAP_START + SCORE_GAP_EXTENSION);
     static final int BONUS_FIRST_CHAR_MULTIPLIER = 2;
+    static final int SCORE_TYPO = -SCORE_MATCH;
+
+    /**
+     * Number of pattern characters per allowed typo, short patterns allow fewer typos so they
+     * still filter the items.
+     */
+    static final int CHARS_PER_TYPO = 4;
+
+    /**
+     * Initial estimate of the time the optimal alignment takes per DP cell until the first
+     * measurement is available.
+     */
+    static final double INITIAL_NANOS_PER_CELL = 2.0;
+
+    /**
+     * Items whose DP matrix would exceed this number of cells keep their greedy alignment.
+     */
+    static final int MAX_ALIGNMENT_CELLS = 1 << 16;
 
-    private final List<String> items;
+    /**
+     * Minimum time between two snapshots published to a {@link ProgressListener}.
+     */
+    public static final int PROGRESS_INTERVAL_MS = 50;
+
+    /**
+     * Number of chunks scanned in parallel between two checks whether to publish a snapshot.
+     */
+    static final int PROGRESS_BATCH_CHUNKS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final MatchIndex<T> index;
     private final OrderBy orderBy;
-    private final boolean normalize;
-    private final List<String> normalizedItems;
-    private final boolean caseSensitive;
+    private final int maxTypos;
+    private final long latencyBudgetNanos;
+
+    // Measured cost of the optimal alignment, adapted after each query of the session
+    private volatile double nanosPerCell = INITIAL_NANOS_PER_CELL;
 
     public FuzzyMatcherV1(
-            final List<String> items,
+            final List<T> items,
             final OrderBy orderBy,
             final boolean normalize,
             final boolean caseSensitive
     ) {
-        this.items = items;
+        this(items, Object::toString, orderBy, normalize, caseSensitive);
+    }
+
+    public FuzzyMatcherV1(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final OrderBy orderBy,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        this(MatchIndex.build(items, keyExtractor, normalize, caseSensitive), orderBy);
+    }
+
+    public FuzzyMatcherV1(final MatchIndex<T> index, final OrderBy orderBy) {
+        this(index, orderBy, 0);
+    }
+
+    /**
+     * Creates a matcher that also finds items in which up to {@code maxTypos} characters of the
+     * pattern are missing or wrong, e.g. {@code fzf4k} matches {@code fzf4j}. Such approximate
+     * matches are ranked below all exact matches.
+     *
+     * <p>{@code maxTypos} is capped at one typo per {@link #CHARS_PER_TYPO} pattern characters,
+     * rounded down: patterns with less than four characters are only matched exactly, patterns
+     * with four to seven characters allow one typo and so on. Patterns longer than 64 characters
+     * are only matched exactly as well.
+     *
+     * @param index    Index of the items
+     * @param orderBy  Result ordering
+     * @param maxTypos Maximum number of typos
+     */
+    public FuzzyMatcherV1(final MatchIndex<T> index, final OrderBy orderBy, final int maxTypos) {
+        this(index, orderBy, maxTypos, Duration.ZERO);
+    }
+
+    /**
+     * Creates a matcher that spends the time left of {@code latencyBudget} after the greedy scan
+     * on finding the optimal alignment of the exact matches, like fzf's V2 algorithm. Small
+     * result sets are thus ranked by their best alignment, e.g. {@code fm} highlights
+     * {@code FuzzyMatcher} instead of {@code fuzzymatcher}, while large ones keep the greedy
+     * scores. A greedy alignment is only replaced if the new one scores higher. Whether the
+     * rescoring fits the budget is predicted from the time it took for previous queries.
+     *
+     * @param index         Index of the items
+     * @param orderBy       Result ordering
+     * @param maxTypos      Maximum number of typos
+     * @param latencyBudget Time a query may take, {@link Duration#ZERO} to only use greedy scores
+     */
+    public FuzzyMatcherV1(
+            final MatchIndex<T> index,
+            final OrderBy orderBy,
+            final int maxTypos,
+            final Duration latencyBudget
+    ) {
+        this.index = index;
         this.orderBy = orderBy;
-        this.normalize = normalize;
-        this.normalizedItems = normalize ? Normalizer.normalize(items) : items;
-        this.caseSensitive = caseSensitive;
+        this.maxTypos = maxTypos;
+        this.latencyBudgetNanos = latencyBudget.toNanos();
+    }
+
+    MatchIndex<T> getIndex() {
+        return index;
+    }
+
+    @Override
+    public int size() {
+        return index.liveSize();
+    }
+
+    @Override
+    public T getItem(final int itemIndex) {
+        return index.getItems().get(itemIndex);
     }
 
-    public List<Result> match(final String pattern) {
+    /**
+     * Matches all patterns in a single parallel pass over the index chunks, testing each item
+     * against the patterns whose signature it contains. Patterns with the same signature are
+     * grouped, so a single test skips the whole group. Each chunk keeps only the best
+     * {@code limit} results per pattern. Results are ranked by their greedy scores, the latency
+     * budget doesn't apply. With {@link OrderBy#INDEX} each pattern is matched on its own, as it
+     * only needs to scan until it found {@code limit} results.
+     *
+     * @param patterns Patterns to match
+     * @param limit    Maximum number of results per pattern
+     * @return Ranked results of each pattern, in the order of the patterns
+     */
+    @Override
+    public List<List<Result<T>>> matchAll(final List<String> patterns, final int limit) {
+        if (orderBy == OrderBy.INDEX) {
+            return Matcher.super.matchAll(patterns, limit);
+        }
+
+        // The empty pattern matches all items and isn't scanned
+        final var queries = patterns.stream()
+                .map(pattern -> pattern.isEmpty() ? null : query(pattern))
+                .toArray(Query[]::new);
+        final var groups = SignatureGroup.of(queries);
+        final var batch = IntStream.range(0, index.chunkCount()).parallel()
+                .mapToObj(chunk -> matchBatch(chunk, queries, groups, limit))
+                .reduce((first, second) -> first.merge(second, limit))
+                .orElseGet(() -> new BatchResults<>(queries.length));
+
+        final var results = new ArrayList<List<Result<T>>>(queries.length);
+        for (var i = 0; i < queries.length; i++) {
+            results.add(queries[i] == null
+                        ? new AllItems<>(index).subList(0, Math.min(limit, index.liveSize()))
+                        : concat(batch.exact[i], top(batch.approximate[i],
+                                                     limit - batch.exact[i].length)));
+        }
+        return results;
+    }
+
+    /**
+     * Counts the items matching the pattern in parallel, only deciding whether each item matches
+     * without aligning, scoring or allocating results.
+     *
+     * @param pattern Pattern to match
+     * @return Number of matching items
+     */
+    @Override
+    public int count(final String pattern) {
+        if (pattern.isEmpty()) {
+            return index.liveSize();
+        }
+        final var query = query(pattern);
+        return IntStream.range(0, index.chunkCount()).parallel()
+                .map(chunk -> countChunk(chunk, query))
+                .sum();
+    }
+
+    @Override
+    public List<Result<T>> match(final String pattern) {
+        return match(pattern, null);
+    }
+
+    /**
+     * Matches the items, publishing ranked snapshots of the results found so far to the listener
+     * every {@link #PROGRESS_INTERVAL_MS} while the scan continues. Chunks are scanned in
+     * batches, the scan stops with a {@link CancellationException} between batches if the
+     * calling thread is interrupted.
+     *
+     * <p>With {@link OrderBy#INDEX} the chunks are matched in parallel and their results are
+     * concatenated in input order, no snapshots are published.
+     *
+     * @param pattern  Pattern to match
+     * @param listener Listener receiving the snapshots or {@code null}
+     * @return Ranked results
+     */
+    @Override
+    public List<Result<T>> match(final String pattern, final ProgressListener<T> listener) {
         if (pattern.isEmpty()) {
-            return IntStream.range(0, items.size()).parallel()
-                    .mapToObj(i -> Result.empty(items.get(i), i))
-                    .collect(Collectors.toList());
+            return new AllItems<>(index);
         }
 
-        final var lowercasePattern = caseSensitive ? pattern : pattern.toLowerCase();
-        final var normalizedPattern = normalize ? Normalizer.normalize(lowercasePattern)
-                                                : lowercasePattern;
+        final var startTime = System.nanoTime();
+        final var query = query(pattern);
 
-        return IntStream.range(0, items.size()).parallel()
-                .mapToObj(i -> match(items.get(i), normalizedItems.get(i), normalizedPattern, i))
-                .filter(Result::isMatch)
-                .sorted(new ResultComparator(orderBy))
-                .collect(Collectors.toList());
+        if (orderBy == OrderBy.INDEX) {
+            return matchInInputOrder(query);
+        }
+
+        final var chunkCount = index.chunkCount();
+        final var batchSize = listener != null ? PROGRESS_BATCH_CHUNKS : chunkCount;
+        final var progressInterval = TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS);
+        var lastProgress = startTime;
+        @SuppressWarnings("unchecked")
+        Result<T>[] results = (Result<T>[]) new Result<?>[0];
+        var approximate = results;
+
+        final var pending = new ArrayList<ChunkResults<T>>();
+        for (var batchStart = 0; batchStart < chunkCount; batchStart += batchSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            final var batchEnd = Math.min(batchStart + batchSize, chunkCount);
+            IntStream.range(batchStart, batchEnd).parallel()
+                    .mapToObj(chunk -> match(chunk, query))
+                    .forEachOrdered(pending::add);
+
+            if (listener != null && batchEnd < chunkCount
+                && System.nanoTime() - lastProgress >= progressInterval) {
+                // Results of the scanned batches are merged into the ones of earlier snapshots
+                results = ResultSorter.merge(results, ranked(pending, ChunkResults::getExact));
+                approximate = ResultSorter.merge(
+                        approximate, ranked(pending, ChunkResults::getApproximate));
+                pending.clear();
+
+                listener.onProgress(
+                        concat(results, approximate),
+                        MatchIndex.chunkEnd(batchEnd - 1, index.size()), index.size()
+                );
+                lastProgress = System.nanoTime();
+            }
+        }
+        results = ResultSorter.merge(results, ranked(pending, ChunkResults::getExact));
+        approximate = ResultSorter.merge(
+                approximate, ranked(pending, ChunkResults::getApproximate));
+
+        if (latencyBudgetNanos > 0 && results.length > 0) {
+            results = realign(results, query.pattern, startTime);
+        }
+        // Approximate matches are ranked below all exact ones
+        return concat(results, approximate);
+    }
+
+    private ChunkResults<T> match(final int chunkIndex, final Query query) {
+        final var chunk = index.chunk(chunkIndex);
+        final var chunkStart = MatchIndex.chunkStart(chunkIndex);
+        final var results = new ChunkResults<T>();
+
+        for (var item = 0; item < chunk.size; item++) {
+            if (!index.isDeleted(chunkStart + item)) {
+                match(chunk, item, query, chunkStart + item, results);
+            }
+        }
+        return results;
     }
 
-    private Result match(
-            final String text,
-            final String normalizedText,
+    /**
+     * Matches an item and adds it to the exact or approximate results if it matches.
+     */
+    private void match(
+            final IndexChunk chunk,
+            final int item,
+            final Query query,
+            final int itemIndex,
+            final ChunkResults<T> results
+    ) {
+        // Each character class missing in the item costs at least one typo
+        final var missing = Long.bitCount(query.signature & ~chunk.signatures[item]);
+        if (missing > query.typos) {
+            return;
+        }
+
+        if (missing == 0) {
+            final var result = match(chunk, item, query.pattern, query.masks, itemIndex);
+            if (result != null) {
+                results.exact.add(result);
+                return;
+            }
+        }
+
+        if (query.typos > 0) {
+            final var result = matchApproximate(
+                    chunk, item, query.pattern, query.masks, query.typos, itemIndex);
+            if (result != null) {
+                results.approximate.add(result);
+            }
+        }
+    }
+
+    private Result<T> match(
+            final IndexChunk chunk,
+            final int item,
             final String pattern,
+            final PatternMasks masks,
             final int itemIndex
     ) {
-        var queryIndex = 0;
-        var startIndex = -1;
-        var endIndex = -1;
+        final var folded = chunk.folded;
+        final var offset = chunk.offsets[item];
+        final var end = chunk.offsets[item + 1];
 
-        for (int textIndex = 0; textIndex < normalizedText.length(); textIndex++) {
-            var textChar = normalizedText.charAt(textIndex);
-            final char queryChar = pattern.charAt(queryIndex);
+        // Find the end of the first occurrence of the pattern, using the bit-parallel kernel if
+        // the pattern fits into its masks. Only items containing the pattern are scored ...
+        final var endIndex = masks != null ? masks.subsequenceEnd(folded, offset, end)
+                                           : subsequenceEnd(folded, offset, end, pattern);
+        if (endIndex == -1) {
+            return null;
+        }
 
-            final var charClass = CharClass.forChar(textChar);
+        // ... and search backwards for the shortest match ending at the same position
+        var textIndex = endIndex;
+        for (var queryIndex = pattern.length() - 1; queryIndex >= 0; queryIndex--) {
+            textIndex = CharScanner.lastIndexOf(
+                    folded, offset, textIndex, pattern.charAt(queryIndex));
+        }
 
-            if (!caseSensitive && charClass == CharClass.UPPER) {
-                textChar = Character.toLowerCase(textChar);
+        return calculateScore(
+                chunk, item, pattern, textIndex - offset, endIndex - offset, itemIndex, 0);
+    }
+
+    /**
+     * With {@link OrderBy#INDEX} the results are {@link ResumableResults} that are only matched
+     * as far as they are accessed while the matches are counted in a background thread with low
+     * priority. Other orders need all matches for ranking, so they are matched completely.
+     *
+     * @param pattern  Pattern to match
+     * @param listener Listener receiving snapshots of complete matching or {@code null}
+     * @return Ranked results, possibly only partially available
+     */
+    @Override
+    public List<Result<T>> matchLazily(final String pattern, final ProgressListener<T> listener) {
+        if (orderBy != OrderBy.INDEX || pattern.isEmpty()) {
+            return match(pattern, listener);
+        }
+        final var results = new InputOrderResults(query(pattern));
+        results.countAsync();
+        return results;
+    }
+
+    private List<Result<T>> matchInInputOrder(final Query query) {
+        final var chunkResults = IntStream.range(0, index.chunkCount()).parallel()
+                .mapToObj(chunk -> match(chunk, query))
+                .collect(Collectors.toList());
+        final var results = new ArrayList<Result<T>>();
+        for (final var chunk : chunkResults) {
+            addInOrder(results, chunk.exact, chunk.approximate);
+        }
+        return results;
+    }
+
+    /**
+     * Adds the exact and approximate matches of a chunk, both in input order, by item index.
+     */
+    private static <T> void addInOrder(
+            final List<Result<T>> results,
+            final List<Result<T>> exact,
+            final List<Result<T>> approximate
+    ) {
+        var i = 0;
+        var j = 0;
+        while (i < exact.size() || j < approximate.size()) {
+            if (j == approximate.size() || i < exact.size()
+                && exact.get(i).getItemIndex() < approximate.get(j).getItemIndex()) {
+                results.add(exact.get(i++));
+            } else {
+                results.add(approximate.get(j++));
             }
+        }
+    }
 
-            if (textChar == queryChar) {
+    /**
+     * Counts the items of a chunk matching the pattern, only deciding whether each item matches
+     * without aligning and scoring it.
+     */
+    private int countChunk(final int chunkIndex, final Query query) {
+        final var chunk = index.chunk(chunkIndex);
+        final var chunkStart = MatchIndex.chunkStart(chunkIndex);
+        final var folded = chunk.folded;
+        final var masks = query.masks;
+        var count = 0;
 
-                if (startIndex == -1) {
-                    startIndex = textIndex;
+        for (var item = 0; item < chunk.size; item++) {
+            final var missing = Long.bitCount(query.signature & ~chunk.signatures[item]);
+            if (missing > query.typos || index.isDeleted(chunkStart + item)) {
+                continue;
+            }
+
+            final var offset = chunk.offsets[item];
+            final var end = chunk.offsets[item + 1];
+            if (missing == 0) {
+                final var endIndex = masks != null
+                                     ? masks.subsequenceEnd(folded, offset, end)
+                                     : subsequenceEnd(folded, offset, end, query.pattern);
+                if (endIndex != -1) {
+                    count++;
+                    continue;
                 }
+            }
 
-                if (queryIndex == pattern.length() - 1) {
-                    endIndex = textIndex + 1;
-                    break;
+            // Items shorter than the matched part of the pattern are rejected without a scan
+            if (query.typos > 0 && end - offset >= query.pattern.length() - query.typos) {
+                final var matched = masks.longestCommonSubsequence(folded, offset, end);
+                if (matched > 0 && query.pattern.length() - matched <= query.typos) {
+                    count++;
                 }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Matches a chunk against all patterns of a batch, item by item so each item is only loaded
+     * once.
+     */
+    private BatchResults<T> matchBatch(
+            final int chunkIndex,
+            final Query[] queries,
+            final SignatureGroup[] groups,
+            final int limit
+    ) {
+        final var chunk = index.chunk(chunkIndex);
+        final var chunkStart = MatchIndex.chunkStart(chunkIndex);
+        @SuppressWarnings("unchecked")
+        final var results = (ChunkResults<T>[]) new ChunkResults<?>[queries.length];
+        for (var i = 0; i < queries.length; i++) {
+            results[i] = new ChunkResults<>();
+        }
+
+        for (var item = 0; item < chunk.size; item++) {
+            if (index.isDeleted(chunkStart + item)) {
+                continue;
+            }
+            final var itemSignature = chunk.signatures[item];
+            for (final var group : groups) {
+                if (Long.bitCount(group.signature & ~itemSignature) > group.typos) {
+                    continue;
+                }
+                for (final var i : group.queries) {
+                    match(chunk, item, queries[i], chunkStart + item, results[i]);
+                }
+            }
+        }
+
+        final var batch = new BatchResults<T>(queries.length);
+        for (var i = 0; i < queries.length; i++) {
+            if (results[i].exact.isEmpty() && results[i].approximate.isEmpty()) {
+                continue;
+            }
+            final var chunkResults = List.of(results[i]);
+            batch.exact[i] = top(ranked(chunkResults, ChunkResults::getExact), limit);
+            batch.approximate[i] = top(ranked(chunkResults, ChunkResults::getApproximate), limit);
+        }
+        return batch;
+    }
+
+    private Query query(final String pattern) {
+        final var lowercasePattern = index.isCaseSensitive() ? pattern : pattern.toLowerCase();
+        final var normalizedPattern = index.isNormalize() ? Normalizer.normalize(lowercasePattern)
+                                                          : lowercasePattern;
+        final var typos = normalizedPattern.length() <= PatternMasks.MAX_LENGTH
+                          ? Math.min(maxTypos, normalizedPattern.length() / CHARS_PER_TYPO)
+                          : 0;
+        final var masks = normalizedPattern.length() <= PatternMasks.MAX_LENGTH
+                          ? new PatternMasks(normalizedPattern)
+                          : null;
+        return new Query(normalizedPattern, IndexChunk.signature(normalizedPattern), masks, typos);
+    }
+
+    private static int subsequenceEnd(
+            final char[] folded,
+            final int offset,
+            final int end,
+            final String pattern
+    ) {
+        var textIndex = offset - 1;
+        for (var queryIndex = 0; queryIndex < pattern.length(); queryIndex++) {
+            textIndex = CharScanner.indexOf(folded, textIndex + 1, end, pattern.charAt(queryIndex));
+            if (textIndex == -1) {
+                return -1;
+            }
+        }
+        return textIndex + 1;
+    }
+
+    /**
+     * Replaces the greedy alignments of the results with the alignments of fzf's V2 algorithm if
+     * the predicted time fits into the remaining latency budget and they score higher.
+     */
+    private Result<T>[] realign(
+            final Result<T>[] results,
+            final String pattern,
+            final long startTime
+    ) {
+        var cells = 0L;
+        for (final var result : results) {
+            cells += (long) (result.getEnd() - result.getStart()) * pattern.length();
+        }
+        final var remaining = latencyBudgetNanos - (System.nanoTime() - startTime);
+        if (cells * nanosPerCell > remaining) {
+            return results;
+        }
 
-                queryIndex++;
+        final var realignStart = System.nanoTime();
+        @SuppressWarnings("unchecked")
+        final Result<T>[] realigned = Arrays.stream(results).parallel()
+                .map(result -> realign(result, pattern))
+                .toArray(Result[]::new);
+        // Realigned scores change the ranking, sort by sort key and item index again
+        Arrays.sort(realigned, ResultComparator.INSTANCE);
+
+        // Exponential moving average of the measured cost, so the next query predicts better
+        final var measured = (double) (System.nanoTime() - realignStart) / Math.max(cells, 1);
+        nanosPerCell = 0.7 * nanosPerCell + 0.3 * measured;
+        return realigned;
+    }
+
+    private Result<T> realign(final Result<T> result, final String pattern) {
+        final var itemIndex = result.getItemIndex();
+        final var chunkIndex = itemIndex / MatchIndex.CHUNK_SIZE;
+        final var aligned = alignOptimally(
+                index.chunk(chunkIndex), itemIndex - MatchIndex.chunkStart(chunkIndex), pattern,
+                itemIndex
+        );
+        // Like fzf's V2, the DP ends a gap whenever matching ties with it, so it misses cheaper
+        // gap extensions and isn't optimal in all cases
+        return aligned != null && aligned.getScore() > result.getScore() ? aligned : result;
+    }
+
+    /**
+     * Finds a high scoring alignment of the pattern using the dynamic programming approach of
+     * fzf's V2 algorithm. Returns {@code null} if the matrix would be too large.
+     */
+    private Result<T> alignOptimally(
+            final IndexChunk chunk,
+            final int item,
+            final String pattern,
+            final int itemIndex
+    ) {
+        final var folded = chunk.folded;
+        final var classes = chunk.classes;
+        final var offset = chunk.offsets[item];
+        final var end = chunk.offsets[item + 1];
+        final var patternLength = pattern.length();
+
+        // First possible position of each pattern character and last one of the final character
+        final var first = new int[patternLength];
+        var textIndex = offset - 1;
+        for (var i = 0; i < patternLength; i++) {
+            textIndex = CharScanner.indexOf(folded, textIndex + 1, end, pattern.charAt(i));
+            if (textIndex == -1) {
+                return null;
             }
+            first[i] = textIndex - offset;
+        }
+        final var last = CharScanner.lastIndexOf(
+                folded, offset, end, pattern.charAt(patternLength - 1)) - offset;
+        final var minIndex = first[0];
+        final var width = last - minIndex + 1;
+        if ((long) width * patternLength > MAX_ALIGNMENT_CELLS) {
+            return null;
+        }
+
+        final var bonuses = new int[width];
+        for (var j = minIndex; j <= last; j++) {
+            final var prevClass = j > 0 ? classes[offset + j - 1] : CharClass.NON_WORD;
+            bonuses[j - minIndex] = bonusFor(prevClass, classes[offset + j]);
         }
 
-        if (startIndex != -1 && endIndex != -1) {
-            for (int textIndex = endIndex - 1; textIndex > startIndex; textIndex--) {
-                final var textChar = normalizedText.charAt(textIndex);
-                final var queryChar = pattern.charAt(queryIndex);
+        // scores holds the best score of the pattern prefix ending at or before each position,
+        // consecutive the length of the consecutive chunk ending there
+        final var scores = new int[width * patternLength];
+        final var consecutive = new int[width * patternLength];
+        var maxScore = 0;
+        var maxScoreIndex = -1;
 
-                if (textChar == queryChar) {
-                    if (queryIndex == 0) {
-                        startIndex = textIndex;
-                        break;
+        for (var i = 0; i < patternLength; i++) {
+            final var row = i * width;
+            final var c = pattern.charAt(i);
+            var inGap = false;
+
+            for (var j = first[i]; j <= last; j++) {
+                final var col = j - minIndex;
+                final var gapScore = (j > first[i] ? scores[row + col - 1] : 0)
+                                     + (inGap ? SCORE_GAP_EXTENSION : SCORE_GAP_START);
+                var matchScore = 0;
+                var chunkLength = 0;
+
+                if (folded[offset + j] == c) {
+                    if (i == 0) {
+                        matchScore = SCORE_MATCH + bonuses[col] * BONUS_FIRST_CHAR_MULTIPLIER;
+                        chunkLength = 1;
+                    } else {
+                        final var diagonal = row - width + col - 1;
+                        var bonus = bonuses[col];
+                        chunkLength = consecutive[diagonal] + 1;
+                        if (chunkLength > 1) {
+                            // Break the consecutive chunk at a boundary
+                            final var firstBonus = bonuses[col - chunkLength + 1];
+                            if (bonus >= BONUS_BOUNDARY && bonus > firstBonus) {
+                                chunkLength = 1;
+                            } else {
+                                bonus = Math.max(bonus, Math.max(BONUS_CONSECUTIVE, firstBonus));
+                            }
+                        }
+                        matchScore = scores[diagonal] + SCORE_MATCH;
+                        if (matchScore + bonus < gapScore) {
+                            matchScore += bonuses[col];
+                            chunkLength = 0;
+                        } else {
+                            matchScore += bonus;
+                        }
                     }
+                }
 
-                    queryIndex--;
+                consecutive[row + col] = chunkLength;
+                inGap = matchScore < gapScore;
+                final var score = Math.max(Math.max(matchScore, gapScore), 0);
+                if (i == patternLength - 1 && score > maxScore) {
+                    maxScore = score;
+                    maxScoreIndex = j;
                 }
+                scores[row + col] = score;
             }
+        }
+        if (maxScoreIndex == -1) {
+            return null;
+        }
 
-            return calculateScore(text, normalizedText, pattern, startIndex, endIndex, itemIndex);
+        // Trace the matched positions back from the best end position
+        final var pos = new int[patternLength];
+        var i = patternLength - 1;
+        var j = maxScoreIndex;
+        var preferMatch = true;
+        while (true) {
+            final var cell = i * width + j - minIndex;
+            final var score = scores[cell];
+            final var diagonalScore = i > 0 && j >= first[i] ? scores[cell - width - 1] : 0;
+            final var leftScore = j > first[i] ? scores[cell - 1] : 0;
+            if (score > diagonalScore && (score > leftScore || score == leftScore && preferMatch)) {
+                pos[i] = j;
+                if (i == 0) {
+                    break;
+                }
+                i--;
+            }
+            preferMatch = consecutive[cell] > 1
+                          || cell + width + 1 < consecutive.length
+                             && consecutive[cell + width + 1] > 0;
+            j--;
         }
 
-        return Result.noMatch(text, itemIndex);
+        return result(chunk, item, itemIndex, maxScore, pos, pos[0], maxScoreIndex + 1, false);
+    }
+
+    private static <T> Result<T>[] ranked(
+            final List<ChunkResults<T>> chunkResults,
+            final Function<ChunkResults<T>, List<Result<T>>> list
+    ) {
+        @SuppressWarnings("unchecked")
+        final Result<T>[] results = chunkResults.stream()
+                .flatMap(chunk -> list.apply(chunk).stream())
+                .toArray(Result[]::new);
+        ResultSorter.sort(results);
+        return results;
+    }
+
+    private static <T> Result<T>[] top(final Result<T>[] results, final int limit) {
+        return results.length > limit ? Arrays.copyOf(results, Math.max(limit, 0)) : results;
     }
 
-    private Result calculateScore(
-            final String text,
-            final String normalizedText,
+    private static <T> List<Result<T>> concat(final Result<T>[] first, final Result<T>[] second) {
+        if (second.length == 0) {
+            return Arrays.asList(first);
+        }
+        final var all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return Arrays.asList(all);
+    }
+
+    /**
+     * Matches the longest subsequence of the pattern that occurs in the item if at most
+     * {@code typos} pattern characters are left over. The matched characters are scored like an
+     * exact match, each typo costs {@link #SCORE_TYPO}.
+     */
+    private Result<T> matchApproximate(
+            final IndexChunk chunk,
+            final int item,
+            final String pattern,
+            final PatternMasks masks,
+            final int typos,
+            final int itemIndex
+    ) {
+        final var folded = chunk.folded;
+        final var offset = chunk.offsets[item];
+        final var end = chunk.offsets[item + 1];
+
+        final var minLength = Math.max(1, pattern.length() - typos);
+        if (end - offset < minLength
+            || masks.longestCommonSubsequence(folded, offset, end) < minLength) {
+            return null;
+        }
+
+        final var positions = masks.alignment(folded, offset, end, minLength);
+        final var matched = positions.length;
+        final var subsequence = new char[positions.length];
+        for (var i = 0; i < positions.length; i++) {
+            subsequence[i] = folded[positions[i]];
+        }
+
+        // Score the first occurrence of the subsequence after the start of the alignment
+        final var startIndex = positions[0] - offset;
+        var endIndex = startIndex;
+        for (final var c : subsequence) {
+            while (folded[offset + endIndex] != c) {
+                endIndex++;
+            }
+            endIndex++;
+        }
+
+        return calculateScore(
+                chunk, item, new String(subsequence), startIndex, endIndex, itemIndex,
+                pattern.length() - matched
+        );
+    }
+
+    private Result<T> calculateScore(
+            final IndexChunk chunk,
+            final int item,
             final String pattern,
             final int startIndex,
             final int endIndex,
-            final int itemIndex
+            final int itemIndex,
+            final int typos
     ) {
+        final var folded = chunk.folded;
+        final var classes = chunk.classes;
+        final var offset = chunk.offsets[item];
+
         var patternIndex = 0;
-        var score = 0;
+        var score = typos * SCORE_TYPO;
         var consecutive = 0;
         var firstBonus = 0;
         var inGap = false;
         var pos = new int[pattern.length()];
 
-        var prevClass = startIndex > 0 ? CharClass.forChar(normalizedText.charAt(startIndex - 1))
-                                       : CharClass.NON_WORD;
+        var prevClass = startIndex > 0 ? classes[offset + startIndex - 1] : CharClass.NON_WORD;
 
         for (var i = startIndex; i < endIndex; i++) {
-            var c = normalizedText.charAt(i);
-            final var charClass = CharClass.forChar(c);
+            final var charClass = classes[offset + i];
 
-            if (!caseSensitive && charClass == CharClass.UPPER) {
-                c = Character.toLowerCase(c);
-            }
-
-            if (c == pattern.charAt(patternIndex)) {
+            if (folded[offset + i] == pattern.charAt(patternIndex)) {
                 pos[patternIndex] = i;
 
                 score += SCORE_MATCH;
@@ -205,10 +854,34 @@ public class FuzzyMatcherV1 {
             prevClass = charClass;
         }
 
-        return new Result(text, startIndex, endIndex, score, pos, itemIndex);
+        return result(chunk, item, itemIndex, score, pos, startIndex, endIndex, typos > 0);
+    }
+
+    private Result<T> result(
+            final IndexChunk chunk,
+            final int item,
+            final int itemIndex,
+            final int score,
+            final int[] pos,
+            final int startIndex,
+            final int endIndex,
+            final boolean approximate
+    ) {
+        // Map positions back to the original text as normalization might change its length
+        for (var i = 0; i < pos.length; i++) {
+            pos[i] = chunk.sourceIndex(item, pos[i]);
+        }
+        final var start = chunk.sourceIndex(item, startIndex);
+        final var end = chunk.sourceIndex(item, endIndex - 1) + 1;
+
+        final var text = index.getKeys().get(itemIndex);
+        final var sortKey = orderBy.sortKey(
+                score, OrderBy.trimmedLength(text), start, text.length() - end);
+        return new Result<>(index.getItems().get(itemIndex), text, start, end, score, pos,
+                            itemIndex, approximate ? orderBy.approximate(sortKey) : sortKey);
     }
 
-    private int bonusFor(CharClass prevClass, CharClass charClass) {
+    private int bonusFor(final byte prevClass, final byte charClass) {
         if (prevClass == CharClass.NON_WORD && charClass != CharClass.NON_WORD) {
             return BONUS_BOUNDARY;
         } else if (prevClass == CharClass.LOWER && charClass == CharClass.UPPER
@@ -221,20 +894,215 @@ public class FuzzyMatcherV1 {
         return 0;
     }
 
-    private enum CharClass {
-        LOWER, UPPER, LETTER, NUMBER, NON_WORD;
+    /**
+     * Results of the empty pattern: all items in their original order. Creating the list is O(1)
+     * unless items are deleted, results are only created for the rows that are accessed.
+     */
+    private static final class AllItems<T> extends AbstractList<Result<T>>
+            implements RandomAccess {
+
+        private final MatchIndex<T> index;
+        // Indices of the items that aren't deleted, null if all items are live
+        private final int[] live;
+
+        private AllItems(final MatchIndex<T> index) {
+            this.index = index;
+            this.live = index.hasDeleted()
+                        ? IntStream.range(0, index.size())
+                                .filter(itemIndex -> !index.isDeleted(itemIndex))
+                                .toArray()
+                        : null;
+        }
+
+        @Override
+        public Result<T> get(final int position) {
+            final var itemIndex = live != null ? live[position] : position;
+            return Result.empty(
+                    index.getItems().get(itemIndex), index.getKeys().get(itemIndex), itemIndex);
+        }
+
+        @Override
+        public int size() {
+            return live != null ? live.length : index.size();
+        }
+    }
+
+    /**
+     * Results in input order, exact and approximate matches mixed. Chunks are matched one after
+     * another until the requested number of results is found, while a background thread counts
+     * the matches of all chunks. Chunks are matched without holding the lock of the list, so
+     * readers only wait while the results of a chunk are added.
+     */
+    private final class InputOrderResults extends AbstractList<Result<T>>
+            implements ResumableResults<T>, RandomAccess {
 
-        public static CharClass forChar(char c) {
-            if (Character.isLowerCase(c)) {
-                return LOWER;
-            } else if (Character.isUpperCase(c)) {
-                return UPPER;
-            } else if (Character.isDigit(c)) {
-                return NUMBER;
-            } else if (Character.isLetter(c)) {
-                return LETTER;
+        private final Query query;
+        private final List<Result<T>> results = new ArrayList<>();
+        private final CompletableFuture<Integer> totalCount = new CompletableFuture<>();
+        private final Object resumeLock = new Object();
+        private int nextChunk = 0;
+
+        private InputOrderResults(final Query query) {
+            this.query = query;
+        }
+
+        @Override
+        public synchronized Result<T> get(final int position) {
+            return results.get(position);
+        }
+
+        @Override
+        public synchronized int size() {
+            return results.size();
+        }
+
+        @Override
+        public void resume(final int count) {
+            synchronized (resumeLock) {
+                while (size() < count && !isComplete()) {
+                    final var chunkResults = match(nextChunk(), query);
+                    synchronized (this) {
+                        addInOrder(results, chunkResults.exact, chunkResults.approximate);
+                        nextChunk++;
+                    }
+                }
+                if (isComplete()) {
+                    totalCount.complete(size());
+                }
             }
-            return NON_WORD;
+        }
+
+        private synchronized int nextChunk() {
+            return nextChunk;
+        }
+
+        @Override
+        public synchronized boolean isComplete() {
+            return nextChunk == index.chunkCount();
+        }
+
+        @Override
+        public CompletableFuture<Integer> getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Counts the matches in a background thread with low priority. Cancelling the total count
+         * stops counting after the current chunk.
+         */
+        private void countAsync() {
+            Threads.newLowPriorityThread("fzf4j-count", this::count).start();
+        }
+
+        private void count() {
+            var count = 0;
+            for (var chunk = 0; chunk < index.chunkCount() && !totalCount.isDone(); chunk++) {
+                count += countChunk(chunk, query);
+            }
+            totalCount.complete(count);
+        }
+    }
+
+    /**
+     * Preprocessed pattern.
+     */
+    private static final class Query {
+
+        private final String pattern;
+        private final long signature;
+        private final PatternMasks masks;
+        private final int typos;
+
+        private Query(
+                final String pattern,
+                final long signature,
+                final PatternMasks masks,
+                final int typos
+        ) {
+            this.pattern = pattern;
+            this.signature = signature;
+            this.masks = masks;
+            this.typos = typos;
+        }
+    }
+
+    /**
+     * Patterns of a batch sharing the same signature.
+     */
+    private static final class SignatureGroup {
+
+        private final long signature;
+        private final int typos;
+        private final int[] queries;
+
+        private SignatureGroup(final long signature, final int typos, final int[] queries) {
+            this.signature = signature;
+            this.typos = typos;
+            this.queries = queries;
+        }
+
+        private static SignatureGroup[] of(final Query[] queries) {
+            final var groups = new LinkedHashMap<Long, List<Integer>>();
+            for (var i = 0; i < queries.length; i++) {
+                if (queries[i] != null) {
+                    groups.computeIfAbsent(queries[i].signature, signature -> new ArrayList<>())
+                            .add(i);
+                }
+            }
+            return groups.values().stream()
+                    .map(group -> of(queries, group))
+                    .toArray(SignatureGroup[]::new);
+        }
+
+        private static SignatureGroup of(final Query[] queries, final List<Integer> group) {
+            final var indices = group.stream().mapToInt(Integer::intValue).toArray();
+            // Each pattern checks its own number of typos once the group passed
+            var typos = 0;
+            for (final var i : indices) {
+                typos = Math.max(typos, queries[i].typos);
+            }
+            return new SignatureGroup(queries[indices[0]].signature, typos, indices);
+        }
+    }
+
+    /**
+     * Best ranked exact and approximate results of each pattern of a batch.
+     */
+    private static final class BatchResults<T> {
+
+        private final Result<T>[][] exact;
+        private final Result<T>[][] approximate;
+
+        @SuppressWarnings("unchecked")
+        private BatchResults(final int patterns) {
+            this.exact = (Result<T>[][]) new Result<?>[patterns][0];
+            this.approximate = (Result<T>[][]) new Result<?>[patterns][0];
+        }
+
+        private BatchResults<T> merge(final BatchResults<T> other, final int limit) {
+            for (var i = 0; i < exact.length; i++) {
+                exact[i] = top(ResultSorter.merge(exact[i], other.exact[i]), limit);
+                approximate[i] = top(
+                        ResultSorter.merge(approximate[i], other.approximate[i]), limit);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Exact and approximate results of a chunk.
+     */
+    private static final class ChunkResults<T> {
+
+        private final List<Result<T>> exact = new ArrayList<>();
+        private final List<Result<T>> approximate = new ArrayList<>();
+
+        private List<Result<T>> getExact() {
+            return exact;
+        }
+
+        private List<Result<T>> getApproximate() {
+            return approximate;
         }
     }
 }
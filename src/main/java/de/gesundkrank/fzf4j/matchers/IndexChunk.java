@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.gesundkrank.fzf4j.Normalizer;
+import de.gesundkrank.fzf4j.models.FieldSelector;
+
+/**
+ * Preprocessed data of a consecutive range of items. All per character data of the items is
+ * stored back to back in flat arrays, {@link #offsets} marks where each item starts.
+ */
+final class IndexChunk {
+
+    final int size;
+    /**
+     * Start of each item in {@link #normalized}, {@link #folded} and {@link #classes}.
+     * Has {@code size + 1} entries, the last one marks the end of the last item.
+     */
+    final int[] offsets;
+    final char[] normalized;
+    /**
+     * Normalized text lower cased if matching is not case sensitive. This is the text the
+     * pattern is compared against.
+     */
+    final char[] folded;
+    final byte[] classes;
+    final long[] signatures;
+    /**
+     * Start of each item in {@link #sourceIndices}. Items whose normalized text maps one to one
+     * to the original text have no source indices.
+     */
+    final int[] sourceOffsets;
+    /**
+     * Index in the original text of each normalized character.
+     */
+    final int[] sourceIndices;
+
+    IndexChunk(
+            final int size,
+            final int[] offsets,
+            final char[] normalized,
+            final char[] folded,
+            final byte[] classes,
+            final long[] signatures,
+            final int[] sourceOffsets,
+            final int[] sourceIndices
+    ) {
+        this.size = size;
+        this.offsets = offsets;
+        this.normalized = normalized;
+        this.folded = folded;
+        this.classes = classes;
+        this.signatures = signatures;
+        this.sourceOffsets = sourceOffsets;
+        this.sourceIndices = sourceIndices;
+    }
+
+    static IndexChunk build(
+            final List<String> items,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        final var size = items.size();
+        final var offsets = new int[size + 1];
+        final var sourceOffsets = new int[size + 1];
+        final var normalizer = normalize ? new Normalizer() : null;
+        final var selection = fields != null ? new Selection() : null;
+
+        var capacity = 0;
+        for (final var item : items) {
+            capacity += item.length();
+        }
+        var normalized = new char[capacity];
+        var sourceIndices = new int[0];
+
+        for (var i = 0; i < size; i++) {
+            final var item = selection != null ? selection.apply(items.get(i), fields)
+                                               : items.get(i);
+            final var selected = selection != null && !selection.isIdentity();
+            final var offset = offsets[i];
+            final var sourceOffset = sourceOffsets[i];
+
+            if (normalizer != null) {
+                normalizer.apply(item);
+            }
+
+            final int length;
+            if (normalizer == null || normalizer.isIdentity()) {
+                length = item.length();
+                normalized = ensureCapacity(normalized, offset + length);
+                item.getChars(0, length, normalized, offset);
+            } else {
+                length = normalizer.getLength();
+                normalized = ensureCapacity(normalized, offset + length);
+                System.arraycopy(normalizer.getChars(), 0, normalized, offset, length);
+            }
+            offsets[i + 1] = offset + length;
+
+            if (!selected && (normalizer == null || normalizer.isIdentity())) {
+                sourceOffsets[i + 1] = sourceOffset;
+                continue;
+            }
+
+            if (sourceIndices.length < sourceOffset + length) {
+                sourceIndices = Arrays.copyOf(sourceIndices, Math.max(
+                        sourceOffset + length, Math.max(capacity / 8, sourceIndices.length * 2)));
+            }
+            for (var index = 0; index < length; index++) {
+                var source = normalizer == null || normalizer.isIdentity()
+                             ? index
+                             : normalizer.getSourceIndices()[index];
+                if (selected) {
+                    source = selection.indices[source];
+                }
+                sourceIndices[sourceOffset + index] = source;
+            }
+            sourceOffsets[i + 1] = sourceOffset + length;
+        }
+
+        final var length = offsets[size];
+        if (normalized.length != length) {
+            normalized = Arrays.copyOf(normalized, length);
+        }
+        if (sourceIndices.length != sourceOffsets[size]) {
+            sourceIndices = Arrays.copyOf(sourceIndices, sourceOffsets[size]);
+        }
+
+        final var folded = caseSensitive ? normalized : new char[length];
+        final var classes = new byte[length];
+        final var signatures = new long[size];
+
+        for (var i = 0; i < size; i++) {
+            var signature = 0L;
+            for (var pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+                final var c = normalized[pos];
+                final var charClass = CharClass.forChar(c);
+                final var foldedChar = !caseSensitive && charClass == CharClass.UPPER
+                                       ? Character.toLowerCase(c)
+                                       : c;
+                classes[pos] = charClass;
+                folded[pos] = foldedChar;
+                signature |= signatureBit(foldedChar);
+            }
+            signatures[i] = signature;
+        }
+
+        return new IndexChunk(
+                size, offsets, normalized, folded, classes, signatures, sourceOffsets,
+                sourceIndices
+        );
+    }
+
+    /**
+     * Maps an index in the normalized text of an item back to the index in the original text.
+     */
+    int sourceIndex(final int item, final int index) {
+        final var sourceOffset = sourceOffsets[item];
+        return sourceOffset == sourceOffsets[item + 1] ? index
+                                                       : sourceIndices[sourceOffset + index];
+    }
+
+    /**
+     * Signature of a text, a bit set of the characters it contains. A pattern can only match a
+     * text if all bits of the pattern's signature are set in the text's signature.
+     */
+    static long signature(final String text) {
+        var signature = 0L;
+        for (var i = 0; i < text.length(); i++) {
+            signature |= signatureBit(text.charAt(i));
+        }
+        return signature;
+    }
+
+    private static char[] ensureCapacity(final char[] chars, final int capacity) {
+        return capacity > chars.length ? Arrays.copyOf(chars, Math.max(capacity, chars.length * 2))
+                                       : chars;
+    }
+
+    static long signatureBit(final char c) {
+        if (c >= 'a' && c <= 'z') {
+            return 1L << (c - 'a');
+        } else if (c >= '0' && c <= '9') {
+            return 1L << (26 + c - '0');
+        } else if (c >= 'A' && c <= 'Z') {
+            return 1L << (36 + (c - 'A') % 16);
+        }
+        return 1L << (52 + c % 12);
+    }
+
+    /**
+     * Selected fields of an item, concatenated, and the index in the item of each of their
+     * characters. Buffers are reused for all items of a chunk.
+     */
+    private static final class Selection {
+
+        private final StringBuilder text = new StringBuilder();
+        private int[] indices = new int[0];
+        private boolean identity;
+
+        String apply(final String item, final FieldSelector fields) {
+            final var ranges = fields.ranges(item);
+            identity = ranges.length == 2 && ranges[0] == 0 && ranges[1] == item.length();
+            if (identity) {
+                return item;
+            }
+
+            text.setLength(0);
+            for (var range = 0; range < ranges.length; range += 2) {
+                text.append(item, ranges[range], ranges[range + 1]);
+            }
+            if (indices.length < text.length()) {
+                indices = new int[Math.max(text.length(), indices.length * 2)];
+            }
+            var index = 0;
+            for (var range = 0; range < ranges.length; range += 2) {
+                for (var source = ranges[range]; source < ranges[range + 1]; source++) {
+                    indices[index++] = source;
+                }
+            }
+            return text.toString();
+        }
+
+        boolean isIdentity() {
+            return identity;
+        }
+    }
+}
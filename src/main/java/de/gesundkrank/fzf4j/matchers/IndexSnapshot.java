@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+import de.gesundkrank.fzf4j.models.FieldSelector;
+
+/**
+ * Binary snapshot format of a {@link MatchIndex}.
+ *
+ * <p>The file starts with a fixed size header followed by a directory holding position and
+ * length of each chunk and the UTF-8 encoded field selection of the index, if any.
+ * A chunk stores its sections back to back, aligned to 8 bytes:
+ * <pre>
+ *   int size, int textLength, int indexLength, int sourceLength
+ *   int[size + 1]  text offsets
+ *   int[size + 1]  index offsets
+ *   int[size + 1]  source offsets
+ *   long[size]     signatures
+ *   int[sourceLength] source indices
+ *   char[textLength]  original text
+ *   char[indexLength] normalized text
+ *   char[indexLength] folded text, only if the index is case insensitive
+ *   byte[indexLength] character classes
+ * </pre>
+ * All values are little endian, so the sections can be copied from the mapped file with bulk
+ * reads and without any parsing.
+ */
+final class IndexSnapshot {
+
+    static final long MAGIC = 0x5844494a345a4646L; // "FFZ4JIDX"
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 64;
+    static final int DIRECTORY_ENTRY_SIZE = 16;
+
+    private static final int FLAG_NORMALIZE = 1;
+    private static final int FLAG_CASE_SENSITIVE = 2;
+    private static final int FLAG_FIELDS = 4;
+    private static final char FIELDS_SEPARATOR = '\0';
+    private static final int CHUNK_HEADER_SIZE = 16;
+
+    private IndexSnapshot() {
+    }
+
+    static void write(final MatchIndex<?> index, final Path snapshot, final long fingerprint)
+            throws IOException {
+        final var tempFile = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try {
+            writeChunks(index, tempFile, fingerprint);
+            Files.move(
+                    tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private static void writeChunks(
+            final MatchIndex<?> index, final Path file, final long fingerprint
+    ) throws IOException {
+        final var items = index.getKeys();
+        final var chunkCount = index.chunkCount();
+
+        try (var channel = FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            final var directory = allocate(chunkCount * DIRECTORY_ENTRY_SIZE);
+            final var fields = encodeFields(index.getFields());
+            var position = (long) HEADER_SIZE + directory.capacity();
+            position += writeFully(channel, ByteBuffer.wrap(fields), position);
+
+            for (var chunk = 0; chunk < chunkCount; chunk++) {
+                final var chunkItems = items.subList(
+                        MatchIndex.chunkStart(chunk), MatchIndex.chunkEnd(chunk, items.size()));
+                final var buffer = encode(
+                        index.chunk(chunk), chunkItems, index.isCaseSensitive());
+                directory.putLong(position).putLong(buffer.remaining());
+                position += writeFully(channel, buffer, position);
+            }
+
+            final var header = allocate(HEADER_SIZE)
+                    .putLong(MAGIC)
+                    .putInt(VERSION)
+                    .putInt((index.isNormalize() ? FLAG_NORMALIZE : 0)
+                            | (index.isCaseSensitive() ? FLAG_CASE_SENSITIVE : 0)
+                            | (index.getFields() != null ? FLAG_FIELDS : 0))
+                    .putLong(fingerprint)
+                    .putInt(items.size())
+                    .putInt(MatchIndex.CHUNK_SIZE)
+                    .putInt(chunkCount)
+                    .putInt(fields.length);
+            header.clear();
+            directory.flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, directory, HEADER_SIZE);
+            channel.force(true);
+        }
+    }
+
+    static MatchIndex<String> read(final Path snapshot) throws IOException {
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            final var header = allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not an index snapshot: " + snapshot);
+            }
+            final var version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported index snapshot version: " + version);
+            }
+            final var flags = header.getInt();
+            final var fingerprint = header.getLong();
+            final var size = header.getInt();
+            final var chunkSize = header.getInt();
+            final var chunkCount = header.getInt();
+            final var fieldsLength = header.getInt();
+            if (chunkSize != MatchIndex.CHUNK_SIZE
+                || chunkCount != MatchIndex.countChunks(size)) {
+                throw new IOException("Invalid index snapshot layout: " + snapshot);
+            }
+
+            final var directory = allocate(chunkCount * DIRECTORY_ENTRY_SIZE);
+            readFully(channel, directory, HEADER_SIZE);
+            final var fields = allocate(fieldsLength);
+            readFully(channel, fields, HEADER_SIZE + directory.capacity());
+
+            final var caseSensitive = (flags & FLAG_CASE_SENSITIVE) != 0;
+            final var fileSize = channel.size();
+            final var chunks = new ByteBuffer[chunkCount];
+            for (var chunk = 0; chunk < chunkCount; chunk++) {
+                final var position = directory.getLong();
+                final var length = directory.getLong();
+                if (position < 0 || length < CHUNK_HEADER_SIZE || length > Integer.MAX_VALUE
+                    || position + length > fileSize) {
+                    throw new IOException("Truncated index snapshot: " + snapshot);
+                }
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                if (Layout.of(chunks[chunk], caseSensitive).length != length) {
+                    throw new IOException("Invalid index snapshot chunk: " + snapshot);
+                }
+            }
+
+            final var items = new SnapshotItems(chunks, size, caseSensitive);
+            return new MatchIndex<>(
+                    items, items,
+                    (flags & FLAG_FIELDS) != 0 ? decodeFields(fields.array()) : null,
+                    (flags & FLAG_NORMALIZE) != 0,
+                    caseSensitive, fingerprint, chunkLoader(chunks, caseSensitive), null
+            );
+        }
+    }
+
+    private static IntFunction<IndexChunk> chunkLoader(
+            final ByteBuffer[] chunks, final boolean caseSensitive
+    ) {
+        return chunk -> decode(chunks[chunk], caseSensitive);
+    }
+
+    private static byte[] encodeFields(final FieldSelector fields) {
+        if (fields == null) {
+            return new byte[0];
+        }
+        final var spec = fields.getDelimiter() != null
+                         ? fields.getNth() + FIELDS_SEPARATOR + fields.getDelimiter()
+                         : fields.getNth();
+        return spec.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static FieldSelector decodeFields(final byte[] fields) {
+        final var spec = new String(fields, StandardCharsets.UTF_8);
+        final var separator = spec.indexOf(FIELDS_SEPARATOR);
+        return separator == -1
+               ? FieldSelector.parse(null, spec)
+               : FieldSelector.parse(spec.substring(separator + 1), spec.substring(0, separator));
+    }
+
+    private static ByteBuffer encode(
+            final IndexChunk chunk, final List<String> items, final boolean caseSensitive
+    ) throws IOException {
+        final var size = chunk.size;
+        final var textOffsets = new int[size + 1];
+        for (var i = 0; i < size; i++) {
+            textOffsets[i + 1] = textOffsets[i] + items.get(i).length();
+        }
+
+        final var layout = new Layout(
+                size, textOffsets[size], chunk.offsets[size], chunk.sourceOffsets[size],
+                caseSensitive
+        );
+        if (layout.length > Integer.MAX_VALUE) {
+            throw new IOException("Index chunk too large for snapshot: " + layout.length);
+        }
+
+        final var buffer = allocate((int) layout.length);
+        buffer.putInt(size)
+                .putInt(layout.textLength)
+                .putInt(layout.indexLength)
+                .putInt(layout.sourceLength);
+        view(buffer, layout.textOffsets).asIntBuffer().put(textOffsets);
+        view(buffer, layout.offsets).asIntBuffer().put(chunk.offsets);
+        view(buffer, layout.sourceOffsets).asIntBuffer().put(chunk.sourceOffsets);
+        view(buffer, layout.signatures).asLongBuffer().put(chunk.signatures);
+        view(buffer, layout.sourceIndices).asIntBuffer().put(chunk.sourceIndices);
+
+        final var text = view(buffer, layout.text).asCharBuffer();
+        for (var i = 0; i < size; i++) {
+            text.put(items.get(i));
+        }
+
+        view(buffer, layout.normalized).asCharBuffer().put(chunk.normalized);
+        if (!caseSensitive) {
+            view(buffer, layout.folded).asCharBuffer().put(chunk.folded);
+        }
+        view(buffer, layout.classes).put(chunk.classes);
+        buffer.clear();
+        return buffer;
+    }
+
+    private static IndexChunk decode(final ByteBuffer buffer, final boolean caseSensitive) {
+        final var layout = Layout.of(buffer, caseSensitive);
+        final var size = layout.size;
+
+        final var offsets = new int[size + 1];
+        view(buffer, layout.offsets).asIntBuffer().get(offsets);
+        final var sourceOffsets = new int[size + 1];
+        view(buffer, layout.sourceOffsets).asIntBuffer().get(sourceOffsets);
+        final var signatures = new long[size];
+        view(buffer, layout.signatures).asLongBuffer().get(signatures);
+        final var sourceIndices = new int[layout.sourceLength];
+        view(buffer, layout.sourceIndices).asIntBuffer().get(sourceIndices);
+        final var normalized = new char[layout.indexLength];
+        view(buffer, layout.normalized).asCharBuffer().get(normalized);
+        final var folded = caseSensitive ? normalized : new char[layout.indexLength];
+        if (!caseSensitive) {
+            view(buffer, layout.folded).asCharBuffer().get(folded);
+        }
+        final var classes = new byte[layout.indexLength];
+        view(buffer, layout.classes).get(classes);
+
+        return new IndexChunk(
+                size, offsets, normalized, folded, classes, signatures, sourceOffsets,
+                sourceIndices
+        );
+    }
+
+    private static ByteBuffer allocate(final int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer view(final ByteBuffer buffer, final long position) {
+        return buffer.duplicate().position((int) position).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(final long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static long writeFully(
+            final FileChannel channel, final ByteBuffer buffer, final long position
+    ) throws IOException {
+        final var length = buffer.remaining();
+        var written = 0L;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return align(length);
+    }
+
+    private static void readFully(
+            final FileChannel channel, final ByteBuffer buffer, final long position
+    ) throws IOException {
+        var read = 0L;
+        while (buffer.hasRemaining()) {
+            final var count = channel.read(buffer, position + read);
+            if (count < 0) {
+                throw new IOException("Unexpected end of index snapshot");
+            }
+            read += count;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Byte positions of the sections of a chunk.
+     */
+    private static final class Layout {
+
+        final int size;
+        final int textLength;
+        final int indexLength;
+        final int sourceLength;
+        final long textOffsets;
+        final long offsets;
+        final long sourceOffsets;
+        final long signatures;
+        final long sourceIndices;
+        final long text;
+        final long normalized;
+        final long folded;
+        final long classes;
+        final long length;
+
+        Layout(
+                final int size,
+                final int textLength,
+                final int indexLength,
+                final int sourceLength,
+                final boolean caseSensitive
+        ) {
+            this.size = size;
+            this.textLength = textLength;
+            this.indexLength = indexLength;
+            this.sourceLength = sourceLength;
+            this.textOffsets = CHUNK_HEADER_SIZE;
+            this.offsets = textOffsets + 4L * (size + 1);
+            this.sourceOffsets = offsets + 4L * (size + 1);
+            this.signatures = align(sourceOffsets + 4L * (size + 1));
+            this.sourceIndices = signatures + 8L * size;
+            this.text = sourceIndices + 4L * sourceLength;
+            this.normalized = text + 2L * textLength;
+            this.folded = normalized + 2L * indexLength;
+            this.classes = folded + (caseSensitive ? 0 : 2L * indexLength);
+            this.length = classes + indexLength;
+        }
+
+        static Layout of(final ByteBuffer buffer, final boolean caseSensitive) {
+            return new Layout(
+                    buffer.getInt(0), buffer.getInt(4), buffer.getInt(8), buffer.getInt(12),
+                    caseSensitive
+            );
+        }
+    }
+
+    /**
+     * Items of a loaded snapshot. Strings are only created for items that are accessed and are
+     * kept for later accesses.
+     */
+    private static final class SnapshotItems extends AbstractList<String>
+            implements RandomAccess {
+
+        private final ByteBuffer[] chunks;
+        private final int size;
+        private final boolean caseSensitive;
+        // Racy caching is fine, equal strings might be created twice
+        private final String[] strings;
+
+        SnapshotItems(final ByteBuffer[] chunks, final int size, final boolean caseSensitive) {
+            this.chunks = chunks;
+            this.size = size;
+            this.caseSensitive = caseSensitive;
+            this.strings = new String[size];
+        }
+
+        @Override
+        public String get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            final var cached = strings[index];
+            if (cached != null) {
+                return cached;
+            }
+
+            final var buffer = chunks[index / MatchIndex.CHUNK_SIZE];
+            final var local = index % MatchIndex.CHUNK_SIZE;
+            final var layout = Layout.of(buffer, caseSensitive);
+            final var start = buffer.getInt((int) layout.textOffsets + 4 * local);
+            final var end = buffer.getInt((int) layout.textOffsets + 4 * (local + 1));
+            final var chars = new char[end - start];
+            view(buffer, layout.text + 2L * start).asCharBuffer().get(chars);
+            final var string = new String(chars);
+            strings[index] = string;
+            return string;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
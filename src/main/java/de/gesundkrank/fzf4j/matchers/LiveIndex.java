@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import de.gesundkrank.fzf4j.models.FieldSelector;
+
+/**
+ * Index of a changing set of items, e.g. files kept up to date by a file watcher. Each change
+ * publishes a new immutable {@link MatchIndex} snapshot, so readers see a consistent set of items
+ * without locking while the index is updated.
+ *
+ * <p>Added items are appended, sharing the preprocessed chunks of the previous snapshot that are
+ * full already. Removed items are tombstoned and keep their index, once more than
+ * {@link #COMPACTION_RATIO} of the items are tombstones the index is compacted, which renumbers
+ * the items.
+ *
+ * @param <T> Type of the indexed items
+ */
+public class LiveIndex<T> {
+
+    /**
+     * Share of tombstoned items at which the index is compacted.
+     */
+    static final double COMPACTION_RATIO = 0.25;
+
+    private final Function<? super T, ? extends CharSequence> keyExtractor;
+    private final FieldSelector fields;
+    private final boolean normalize;
+    private final boolean caseSensitive;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this. Slots below the size of a published snapshot are never written again,
+    // growing or compacting the index copies the arrays.
+    private Object[] items;
+    private String[] keys;
+    private int size;
+    private long[] deleted;
+    private int deletedCount;
+    private final Map<T, List<Integer>> positions = new HashMap<>();
+
+    private volatile MatchIndex<T> snapshot;
+
+    LiveIndex(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        this.keyExtractor = keyExtractor;
+        this.fields = fields;
+        this.normalize = normalize;
+        this.caseSensitive = caseSensitive;
+        this.items = new Object[Math.max(items.size(), MatchIndex.CHUNK_SIZE)];
+        this.keys = new String[this.items.length];
+        this.deleted = new long[words(this.items.length)];
+        append(items);
+        this.snapshot = publish(0);
+    }
+
+    /**
+     * Creates a live index over a list of strings.
+     *
+     * @param items         Initial items
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @return Live index
+     */
+    public static LiveIndex<String> build(
+            final List<String> items,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return new LiveIndex<>(items, String::toString, null, normalize, caseSensitive);
+    }
+
+    /**
+     * Creates a live index over items of any type, matching only some fields of each item. The
+     * key of each item is extracted when it's added.
+     *
+     * @param items         Initial items
+     * @param keyExtractor  Function returning the text of an item to match and display.
+     * @param fields        Fields of the keys to match or {@code null} to match whole keys.
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @param <T>           Type of the items
+     * @return Live index
+     */
+    public static <T> LiveIndex<T> build(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return new LiveIndex<>(items, keyExtractor, fields, normalize, caseSensitive);
+    }
+
+    /**
+     * Current snapshot of the items. Snapshots are immutable, later changes publish a new one.
+     *
+     * @return Index of the items at this point
+     */
+    public MatchIndex<T> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Number of items that weren't removed.
+     *
+     * @return Number of items
+     */
+    public int size() {
+        return snapshot.liveSize();
+    }
+
+    public void add(final T item) {
+        addAll(List.of(item));
+    }
+
+    /**
+     * Appends items to the index and notifies the listeners.
+     *
+     * @param added Items to append
+     */
+    public void addAll(final Collection<? extends T> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            // Chunks that were full before the items were appended are shared
+            final var sharedChunks = size / MatchIndex.CHUNK_SIZE;
+            append(added);
+            snapshot = publish(sharedChunks);
+        }
+        notifyListeners(false);
+    }
+
+    public boolean remove(final T item) {
+        return removeAll(List.of(item));
+    }
+
+    /**
+     * Removes all occurrences of the items from the index and notifies the listeners. The items
+     * are tombstoned until the index is compacted.
+     *
+     * @param removed Items to remove
+     * @return Whether any item was removed
+     */
+    public boolean removeAll(final Collection<? extends T> removed) {
+        final boolean compacted;
+        synchronized (this) {
+            // Published snapshots keep their own copy of the tombstones
+            final var tombstones = Arrays.copyOf(deleted, deleted.length);
+            final var previousCount = deletedCount;
+            for (final var item : removed) {
+                final var itemPositions = positions.remove(item);
+                if (itemPositions != null) {
+                    for (final var position : itemPositions) {
+                        tombstones[position >>> 6] |= 1L << position;
+                        deletedCount++;
+                    }
+                }
+            }
+            if (deletedCount == previousCount) {
+                return false;
+            }
+            deleted = tombstones;
+
+            compacted = deletedCount > size * COMPACTION_RATIO;
+            if (compacted) {
+                compactItems();
+            }
+            // Tombstones don't change the chunks
+            snapshot = publish(compacted ? 0 : snapshot.chunkCount());
+        }
+        notifyListeners(compacted);
+        return true;
+    }
+
+    /**
+     * Removes the tombstoned items, renumbering the remaining ones, and notifies the listeners.
+     * This happens automatically once more than {@link #COMPACTION_RATIO} of the items are
+     * tombstones.
+     */
+    public void compact() {
+        synchronized (this) {
+            if (deletedCount == 0) {
+                return;
+            }
+            compactItems();
+            snapshot = publish(0);
+        }
+        notifyListeners(true);
+    }
+
+    public void addChangeListener(final ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(final ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void append(final Collection<? extends T> added) {
+        final var required = size + added.size();
+        if (required > items.length) {
+            final var capacity = Math.max(required, items.length * 2);
+            items = Arrays.copyOf(items, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            deleted = Arrays.copyOf(deleted, words(capacity));
+        }
+        for (final var item : added) {
+            items[size] = item;
+            keys[size] = keyExtractor.apply(item).toString();
+            positions.computeIfAbsent(item, key -> new ArrayList<>()).add(size);
+            size++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compactItems() {
+        final var liveItems = new Object[Math.max(size - deletedCount, MatchIndex.CHUNK_SIZE)];
+        final var liveKeys = new String[liveItems.length];
+        var liveSize = 0;
+        positions.clear();
+        for (var i = 0; i < size; i++) {
+            if ((deleted[i >>> 6] & 1L << i) == 0) {
+                liveItems[liveSize] = items[i];
+                liveKeys[liveSize] = keys[i];
+                positions.computeIfAbsent((T) items[i], key -> new ArrayList<>())
+                        .add(liveSize);
+                liveSize++;
+            }
+        }
+        items = liveItems;
+        keys = liveKeys;
+        size = liveSize;
+        deleted = new long[words(liveItems.length)];
+        deletedCount = 0;
+    }
+
+    private MatchIndex<T> publish(final int sharedChunks) {
+        final var itemList = new Prefix<T>(items, size);
+        final var keyList = new Prefix<String>(keys, size);
+        return new MatchIndex<>(
+                itemList, keyList, fields, normalize, caseSensitive, 0,
+                MatchIndex.chunkLoader(keyList, fields, normalize, caseSensitive), null,
+                sharedChunks > 0 ? snapshot.sharedChunks(sharedChunks) : List.of(),
+                deletedCount > 0 ? deleted : null, deletedCount
+        );
+    }
+
+    private void notifyListeners(final boolean renumbered) {
+        for (final var listener : listeners) {
+            listener.onChange(renumbered);
+        }
+    }
+
+    private static int words(final int bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Immutable view of the first items of an array whose later slots are still written.
+     */
+    private static final class Prefix<E> extends AbstractList<E> implements RandomAccess {
+
+        private final Object[] array;
+        private final int size;
+
+        private Prefix(final Object[] array, final int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(final int index) {
+            return (E) array[Objects.checkIndex(index, size)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
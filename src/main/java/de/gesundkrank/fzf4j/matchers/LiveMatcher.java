@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.time.Duration;
+import java.util.List;
+
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+/**
+ * Matcher over the current snapshot of a {@link LiveIndex}. Each query matches the latest
+ * snapshot, listeners are notified when the index changes.
+ *
+ * @param <T> Type of the matched items
+ */
+public class LiveMatcher<T> implements Matcher<T> {
+
+    private final LiveIndex<T> index;
+    private final OrderBy orderBy;
+    private final int maxTypos;
+    private final Duration latencyBudget;
+
+    // Matcher of the latest snapshot, replaced when a query sees a newer one
+    private volatile FuzzyMatcherV1<T> matcher;
+
+    public LiveMatcher(final LiveIndex<T> index, final OrderBy orderBy) {
+        this(index, orderBy, 0, Duration.ZERO);
+    }
+
+    /**
+     * Creates a matcher over a live index.
+     *
+     * @param index         Live index of the items
+     * @param orderBy       Result ordering
+     * @param maxTypos      Maximum number of typos, see {@link FuzzyMatcherV1}
+     * @param latencyBudget Time a query may take, see {@link FuzzyMatcherV1}
+     */
+    public LiveMatcher(
+            final LiveIndex<T> index,
+            final OrderBy orderBy,
+            final int maxTypos,
+            final Duration latencyBudget
+    ) {
+        this.index = index;
+        this.orderBy = orderBy;
+        this.maxTypos = maxTypos;
+        this.latencyBudget = latencyBudget;
+    }
+
+    @Override
+    public List<Result<T>> match(final String pattern) {
+        return matcher().match(pattern);
+    }
+
+    @Override
+    public List<Result<T>> match(final String pattern, final ProgressListener<T> listener) {
+        return matcher().match(pattern, listener);
+    }
+
+    @Override
+    public List<Result<T>> matchLazily(final String pattern, final ProgressListener<T> listener) {
+        return matcher().matchLazily(pattern, listener);
+    }
+
+    @Override
+    public List<List<Result<T>>> matchAll(final List<String> patterns, final int limit) {
+        return matcher().matchAll(patterns, limit);
+    }
+
+    @Override
+    public int count(final String pattern) {
+        return matcher().count(pattern);
+    }
+
+    @Override
+    public void addChangeListener(final ChangeListener listener) {
+        index.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(final ChangeListener listener) {
+        index.removeChangeListener(listener);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Item by its index in the snapshot of the latest query. Indices stay valid until the index is
+     * compacted.
+     *
+     * @param itemIndex Index of the item
+     * @return Item
+     */
+    @Override
+    public T getItem(final int itemIndex) {
+        return matcher().getItem(itemIndex);
+    }
+
+    private FuzzyMatcherV1<T> matcher() {
+        final var snapshot = index.snapshot();
+        var current = matcher;
+        if (current == null || current.getIndex() != snapshot) {
+            current = new FuzzyMatcherV1<>(snapshot, orderBy, maxTypos, latencyBudget);
+            matcher = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,610 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import de.gesundkrank.fzf4j.models.FieldSelector;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Preprocessed items used by {@link FuzzyMatcherV1}. Items are split into chunks of
+ * {@link #CHUNK_SIZE} items, each holding the normalized and folded text, the character classes
+ * and the prefilter signatures of its items.
+ *
+ * <p>Chunks are preprocessed lazily the first time they are used, so creating an index is
+ * independent of the number of items. {@link #prepareAsync()} preprocesses the remaining chunks in
+ * the background.
+ *
+ * <p>An index can be saved to a binary snapshot using {@link #save(Path, long)} and reopened with
+ * {@link #load(Path)} without normalizing the items again.
+ *
+ * <p>Items of any type can be indexed by a key extractor returning the text to match. The key of
+ * every item is extracted only once, when its chunk is preprocessed, and kept for displaying it.
+ *
+ * @param <T> Type of the indexed items
+ */
+public class MatchIndex<T> {
+
+    static final int CHUNK_SIZE = 4096;
+
+    private final List<T> items;
+    private final List<String> keys;
+    private final FieldSelector fields;
+    private final boolean normalize;
+    private final boolean caseSensitive;
+    private final long fingerprint;
+    private final List<FutureTask<IndexChunk>> chunks;
+    private final Duplicates<T> duplicates;
+    private final long[] deleted;
+    private final int deletedCount;
+
+    MatchIndex(
+            final List<T> items,
+            final List<String> keys,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive,
+            final long fingerprint,
+            final IntFunction<IndexChunk> chunkLoader,
+            final Duplicates<T> duplicates
+    ) {
+        this(items, keys, fields, normalize, caseSensitive, fingerprint, chunkLoader, duplicates,
+             List.of(), null, 0);
+    }
+
+    /**
+     * Creates an index sharing the leading chunks of a previous index whose items didn't change.
+     * Tombstoned items stay in the chunks but are skipped when matching.
+     *
+     * @param sharedChunks Chunks of a previous index, in order
+     * @param deleted      Bit set of the tombstoned items or {@code null}, not modified later
+     * @param deletedCount Number of tombstoned items
+     */
+    MatchIndex(
+            final List<T> items,
+            final List<String> keys,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive,
+            final long fingerprint,
+            final IntFunction<IndexChunk> chunkLoader,
+            final Duplicates<T> duplicates,
+            final List<FutureTask<IndexChunk>> sharedChunks,
+            final long[] deleted,
+            final int deletedCount
+    ) {
+        this.items = items;
+        this.keys = keys;
+        this.fields = fields;
+        this.normalize = normalize;
+        this.caseSensitive = caseSensitive;
+        this.fingerprint = fingerprint;
+        this.duplicates = duplicates;
+        this.deleted = deleted;
+        this.deletedCount = deletedCount;
+        this.chunks = new ArrayList<>(sharedChunks);
+        for (var chunk = chunks.size(); chunk < countChunks(items.size()); chunk++) {
+            final var loaded = chunk;
+            chunks.add(new FutureTask<>(() -> chunkLoader.apply(loaded)));
+        }
+    }
+
+    /**
+     * Creates an index over a list of strings. Items are preprocessed lazily.
+     *
+     * @param items         Items to be matched.
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @return Index over all items
+     */
+    public static MatchIndex<String> build(
+            final List<String> items,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return build(items, items, null, normalize, caseSensitive, 0);
+    }
+
+    /**
+     * Creates an index over a list of items of any type. Items are preprocessed lazily.
+     *
+     * @param items         Items to be matched.
+     * @param keyExtractor  Function returning the text of an item to match and display.
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @param <T>           Type of the items
+     * @return Index over all items
+     */
+    public static <T> MatchIndex<T> build(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return build(items, keyExtractor, null, normalize, caseSensitive);
+    }
+
+    /**
+     * Creates an index over a list of items of any type, matching only some fields of each item.
+     * Items are preprocessed lazily.
+     *
+     * @param items         Items to be matched.
+     * @param keyExtractor  Function returning the text of an item to match and display.
+     * @param fields        Fields of the keys to match or {@code null} to match whole keys.
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @param <T>           Type of the items
+     * @return Index over all items
+     */
+    public static <T> MatchIndex<T> build(
+            final List<T> items,
+            final Function<? super T, ? extends CharSequence> keyExtractor,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return build(items, new Keys<>(items, keyExtractor), fields, normalize, caseSensitive, 0);
+    }
+
+    static <T> MatchIndex<T> build(
+            final List<T> items,
+            final List<String> keys,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive,
+            final long fingerprint
+    ) {
+        return new MatchIndex<>(
+                items, keys, fields, normalize, caseSensitive, fingerprint,
+                chunkLoader(keys, fields, normalize, caseSensitive), null
+        );
+    }
+
+    static IntFunction<IndexChunk> chunkLoader(
+            final List<String> keys,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) {
+        return chunk -> IndexChunk.build(
+                keys.subList(chunkStart(chunk), chunkEnd(chunk, keys.size())),
+                fields, normalize, caseSensitive
+        );
+    }
+
+    /**
+     * Loads an index from a snapshot written by {@link #save(Path, long)}. Only the header is read
+     * eagerly, the chunks are mapped into memory and copied on first use.
+     *
+     * @param snapshot Path of the snapshot file
+     * @return Loaded index
+     * @throws IOException if the snapshot can't be read or has an unknown format
+     */
+    public static MatchIndex<String> load(final Path snapshot) throws IOException {
+        return IndexSnapshot.read(snapshot);
+    }
+
+    /**
+     * Reads the lines of a source file into an index. If the snapshot file exists and was built
+     * from the same version of the source file with the same options it's loaded instead.
+     * Otherwise the index is built and written to the snapshot file.
+     *
+     * @param source        File with one item per line
+     * @param snapshot      Snapshot file of the index
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @return Index over all lines of the source file
+     * @throws IOException if the source file can't be read or the snapshot can't be written
+     */
+    public static MatchIndex<String> open(
+            final Path source,
+            final Path snapshot,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) throws IOException {
+        return open(source, snapshot, null, normalize, caseSensitive);
+    }
+
+    /**
+     * Reads the lines of a source file into an index matching only some fields of each line. The
+     * snapshot file is reused like in {@link #open(Path, Path, boolean, boolean)} if it was built
+     * with the same fields.
+     *
+     * @param source        File with one item per line
+     * @param snapshot      Snapshot file of the index
+     * @param fields        Fields of the lines to match or {@code null} to match whole lines.
+     * @param normalize     Normalize items using {@link de.gesundkrank.fzf4j.Normalizer}.
+     * @param caseSensitive Be case sensitive when matching items.
+     * @return Index over all lines of the source file
+     * @throws IOException if the source file can't be read or the snapshot can't be written
+     */
+    public static MatchIndex<String> open(
+            final Path source,
+            final Path snapshot,
+            final FieldSelector fields,
+            final boolean normalize,
+            final boolean caseSensitive
+    ) throws IOException {
+        final var fingerprint = fingerprint(source);
+
+        if (Files.exists(snapshot)) {
+            try {
+                final var index = load(snapshot);
+                if (index.fingerprint == fingerprint && index.normalize == normalize
+                    && index.caseSensitive == caseSensitive
+                    && Objects.equals(index.fields, fields)) {
+                    return index;
+                }
+            } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+                // outdated, truncated or corrupt snapshot, rebuild it
+            }
+        }
+
+        final var items = Files.readAllLines(source, StandardCharsets.UTF_8);
+        final var index = build(items, items, fields, normalize, caseSensitive, fingerprint);
+        index.save(snapshot, fingerprint);
+        return index;
+    }
+
+    /**
+     * Calculates a fingerprint of a source file based on its size and modification time.
+     *
+     * @param source Source file of an index
+     * @return Fingerprint of the file
+     * @throws IOException if the file attributes can't be read
+     */
+    public static long fingerprint(final Path source) throws IOException {
+        final var attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return attributes.size() * 31 + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes the index to a snapshot file. The file is replaced atomically.
+     *
+     * @param snapshot    Path of the snapshot file
+     * @param fingerprint Fingerprint of the items' source, see {@link #fingerprint(Path)}
+     * @throws IOException           if the snapshot can't be written
+     * @throws IllegalStateException if the index contains deleted items or is deduplicated
+     */
+    public void save(final Path snapshot, final long fingerprint) throws IOException {
+        if (hasDeleted()) {
+            throw new IllegalStateException("Compact the live index before saving it");
+        }
+        if (isDeduplicated()) {
+            // Snapshots don't store the occurrences of the entries
+            throw new IllegalStateException("Save the index before deduplicating it");
+        }
+        IndexSnapshot.write(this, snapshot, fingerprint);
+    }
+
+    /**
+     * Creates an index holding each distinct key only once. Matching, sorting and rendering work
+     * on the distinct entries, {@link #getOccurrences(int)} maps an entry back to all items with
+     * its key. Extracts the keys of all items.
+     *
+     * <p>A deduplicated index can't be saved, save the index before deduplicating it and
+     * deduplicate it again after loading it.
+     *
+     * @return Deduplicated index, or this index if it's deduplicated already
+     */
+    public MatchIndex<T> deduplicate() {
+        if (duplicates != null) {
+            return this;
+        }
+
+        final var size = size();
+        final var entries = new HashMap<String, Integer>();
+        final var entryOf = new int[size];
+        final var firstOccurrences = new int[size];
+        var entryCount = 0;
+
+        for (var i = 0; i < size; i++) {
+            final var entry = entries.putIfAbsent(keys.get(i), entryCount);
+            if (entry == null) {
+                firstOccurrences[entryCount] = i;
+                entryOf[i] = entryCount++;
+            } else {
+                entryOf[i] = entry;
+            }
+        }
+
+        // Original indices grouped by entry, in the order of the items
+        final var offsets = new int[entryCount + 1];
+        for (final var entry : entryOf) {
+            offsets[entry + 1]++;
+        }
+        for (var entry = 0; entry < entryCount; entry++) {
+            offsets[entry + 1] += offsets[entry];
+        }
+        final var occurrences = new int[size];
+        final var next = Arrays.copyOf(offsets, entryCount);
+        for (var i = 0; i < size; i++) {
+            occurrences[next[entryOf[i]]++] = i;
+        }
+
+        final var first = Arrays.copyOf(firstOccurrences, entryCount);
+        final var uniqueKeys = new Subset<>(keys, first);
+        return new MatchIndex<>(
+                new Subset<>(items, first), uniqueKeys, fields, normalize, caseSensitive,
+                fingerprint, chunkLoader(uniqueKeys, fields, normalize, caseSensitive),
+                new Duplicates<>(items, offsets, occurrences)
+        );
+    }
+
+    /**
+     * Preprocesses all chunks that haven't been used yet, one after another in a background
+     * thread. Chunks needed by a query in the meantime are preprocessed on demand.
+     *
+     * @return Future completing once all chunks are preprocessed, or exceptionally with the
+     *     failure of a chunk. Cancelling it stops the preprocessing after the current chunk.
+     */
+    public CompletableFuture<Void> prepareAsync() {
+        final var future = new CompletableFuture<Void>();
+        final var thread = Threads.newLowPriorityThread("fzf4j-prepare-index", () -> {
+            try {
+                for (var chunk = 0; chunk < chunkCount() && !future.isDone(); chunk++) {
+                    chunk(chunk);
+                }
+                future.complete(null);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+            }
+        });
+        thread.start();
+        return future;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Texts of all items that are matched and displayed.
+     *
+     * @return Keys of all items, in the same order as {@link #getItems()}
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isDeduplicated() {
+        return duplicates != null;
+    }
+
+    /**
+     * Number of items an entry stands for, more than one if the index is deduplicated.
+     *
+     * @param index Index of an entry
+     * @return Number of items with the key of the entry
+     */
+    public int getOccurrenceCount(final int index) {
+        return duplicates != null ? duplicates.offsets[index + 1] - duplicates.offsets[index] : 1;
+    }
+
+    /**
+     * Original indices of all items an entry stands for.
+     *
+     * @param index Index of an entry
+     * @return Indices in {@link #getSourceItems()}, in ascending order
+     */
+    public int[] getOccurrences(final int index) {
+        return duplicates != null
+               ? Arrays.copyOfRange(
+                       duplicates.occurrences, duplicates.offsets[index],
+                       duplicates.offsets[index + 1])
+               : new int[]{index};
+    }
+
+    /**
+     * Items the index was built from, including duplicates.
+     *
+     * @return Original items
+     */
+    public List<T> getSourceItems() {
+        return duplicates != null ? duplicates.items : items;
+    }
+
+    public FieldSelector getFields() {
+        return fields;
+    }
+
+    public boolean isNormalize() {
+        return normalize;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Whether the index contains tombstoned items, see {@link LiveIndex}.
+     *
+     * @return {@code true} if some items are deleted
+     */
+    public boolean hasDeleted() {
+        return deletedCount > 0;
+    }
+
+    /**
+     * Whether an item was deleted from a {@link LiveIndex} after this index was created. Deleted
+     * items keep their index but never match.
+     *
+     * @param index Index of an item
+     * @return {@code true} if the item is deleted
+     */
+    public boolean isDeleted(final int index) {
+        return deleted != null && (deleted[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Number of items that are not deleted.
+     *
+     * @return Number of live items
+     */
+    public int liveSize() {
+        return size() - deletedCount;
+    }
+
+    int chunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Leading chunks to share with an index whose first items are the same.
+     */
+    List<FutureTask<IndexChunk>> sharedChunks(final int count) {
+        return chunks.subList(0, count);
+    }
+
+    /**
+     * Returns a chunk, preprocessing it if necessary. If another thread is already preprocessing
+     * the chunk this waits for it instead of doing the work twice.
+     */
+    IndexChunk chunk(final int chunk) {
+        final var task = chunks.get(chunk);
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static int countChunks(final int size) {
+        return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    static int chunkStart(final int chunk) {
+        return chunk * CHUNK_SIZE;
+    }
+
+    static int chunkEnd(final int chunk, final int size) {
+        return Math.min(chunkStart(chunk + 1), size);
+    }
+
+    /**
+     * Keys of items extracted on first access. Each key is extracted only once and kept, concurrent
+     * first accesses might extract it twice but always store an equal string.
+     */
+    private static final class Keys<T> extends AbstractList<String> {
+
+        private final List<T> items;
+        private final Function<? super T, ? extends CharSequence> keyExtractor;
+        private final String[] keys;
+
+        private Keys(
+                final List<T> items,
+                final Function<? super T, ? extends CharSequence> keyExtractor
+        ) {
+            this.items = items;
+            this.keyExtractor = keyExtractor;
+            this.keys = new String[items.size()];
+        }
+
+        @Override
+        public String get(final int index) {
+            var key = keys[index];
+            if (key == null) {
+                key = keyExtractor.apply(items.get(index)).toString();
+                keys[index] = key;
+            }
+            return key;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+    }
+
+    /**
+     * Items of a list at the given indices.
+     */
+    private static final class Subset<E> extends AbstractList<E> implements RandomAccess {
+
+        private final List<E> list;
+        private final int[] indices;
+
+        private Subset(final List<E> list, final int[] indices) {
+            this.list = list;
+            this.indices = indices;
+        }
+
+        @Override
+        public E get(final int index) {
+            return list.get(indices[index]);
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+
+    /**
+     * Original items of a deduplicated index. The occurrences of entry {@code i} are stored in
+     * {@code occurrences[offsets[i]]} to {@code occurrences[offsets[i + 1]]}.
+     */
+    private static final class Duplicates<T> {
+
+        private final List<T> items;
+        private final int[] offsets;
+        private final int[] occurrences;
+
+        private Duplicates(final List<T> items, final int[] offsets, final int[] occurrences) {
+            this.items = items;
+            this.offsets = offsets;
+            this.occurrences = occurrences;
+        }
+    }
+}
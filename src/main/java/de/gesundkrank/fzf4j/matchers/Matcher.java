@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+/**
+ * Backend filtering and ranking the items for a query, e.g. a {@link FuzzyMatcherV1} over a local
+ * index or a client of a matcher daemon.
+ *
+ * @param <T> Type of the matched items
+ */
+public interface Matcher<T> {
+
+    /**
+     * Matches all items against the pattern.
+     *
+     * @param pattern Pattern to match, all items are returned for the empty pattern
+     * @return Ranked results
+     */
+    List<Result<T>> match(String pattern);
+
+    /**
+     * Matches all items against the pattern, publishing snapshots of the results while the items
+     * are scanned if the backend supports it.
+     *
+     * @param pattern  Pattern to match
+     * @param listener Listener receiving the snapshots or {@code null}
+     * @return Ranked results
+     */
+    default List<Result<T>> match(String pattern, ProgressListener<T> listener) {
+        return match(pattern);
+    }
+
+    /**
+     * Matches the items against the pattern, but allows the backend to stop once it found enough
+     * results for the first page. The results are then {@link ResumableResults} that have to be
+     * resumed as far as they are read. Backends that can't stop early return the results of
+     * {@link #match(String, ProgressListener)}.
+     *
+     * @param pattern  Pattern to match
+     * @param listener Listener receiving snapshots of complete matching or {@code null}
+     * @return Ranked results, possibly only partially available
+     */
+    default List<Result<T>> matchLazily(String pattern, ProgressListener<T> listener) {
+        return match(pattern, listener);
+    }
+
+    /**
+     * Matches several patterns against the items, e.g. to resolve a batch of queries. Backends
+     * may scan the items only once for all patterns.
+     *
+     * @param patterns Patterns to match
+     * @param limit    Maximum number of results per pattern
+     * @return Ranked results of each pattern, in the order of the patterns
+     */
+    default List<List<Result<T>>> matchAll(List<String> patterns, int limit) {
+        final var results = new ArrayList<List<Result<T>>>(patterns.size());
+        for (final var pattern : patterns) {
+            final var matched = matchLazily(pattern, null);
+            if (matched instanceof ResumableResults) {
+                // Results in input order are only scanned up to the limit
+                final var resumable = (ResumableResults<T>) matched;
+                resumable.resume(limit);
+                resumable.getTotalCount().cancel(false);
+            }
+            results.add(matched.subList(0, Math.min(limit, matched.size())));
+        }
+        return results;
+    }
+
+    /**
+     * Counts the items matching the pattern. Backends may count them without ranking, e.g. to show
+     * the number of matches of a query whose results are only partially ranked.
+     *
+     * @param pattern Pattern to match
+     * @return Number of matching items
+     */
+    default int count(String pattern) {
+        final var results = match(pattern);
+        if (results instanceof ResumableResults) {
+            return ((ResumableResults<T>) results).getTotalCount().join();
+        }
+        return results.size();
+    }
+
+    /**
+     * Registers a listener notified when the items change, e.g. those of a {@link LiveIndex}.
+     * Backends with fixed items ignore it.
+     *
+     * @param listener Listener to notify
+     */
+    default void addChangeListener(ChangeListener listener) {
+    }
+
+    default void removeChangeListener(ChangeListener listener) {
+    }
+
+    /**
+     * Number of matched items.
+     *
+     * @return Number of items
+     */
+    int size();
+
+    /**
+     * Item by its index, as returned by {@link Result#getItemIndex()}.
+     *
+     * @param itemIndex Index of the item
+     * @return Item
+     */
+    T getItem(int itemIndex);
+}
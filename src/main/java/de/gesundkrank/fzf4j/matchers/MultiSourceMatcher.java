@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.utils.ResultComparator;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Matcher over several {@link Source sources}, each matched by its own matcher with its own
+ * index and caches, so they don't have to be concatenated into a single list of items. The
+ * sources are matched in parallel and their ranked results are combined by a k-way merge in the
+ * order of {@link ResultComparator}. The merge is lazy, only the results that are read are
+ * merged.
+ *
+ * <p>While slow sources are still matching, the merged results of the others are published to
+ * the {@link ProgressListener}, so they can be shown right away.
+ *
+ * <p>Results in input order are not merged but concatenated. When matching them lazily, the
+ * sources are only matched as far as their results are read, see {@link #matchLazily}.
+ *
+ * <p>Item indices are global, the items of a source follow the items of the sources before it.
+ * Sources have to number their items from 0 to their size, like a {@link MatchIndex}. The
+ * offsets of the sources are updated whenever a source notifies its {@link ChangeListener}s.
+ *
+ * @param <T> Type of the items
+ */
+public class MultiSourceMatcher<T> implements Matcher<T>, AutoCloseable {
+
+    private final List<Source<T>> sources;
+    private final OrderBy orderBy;
+    private final ExecutorService executor;
+    private final ChangeListener offsetsListener = renumbered -> updateOffsets();
+
+    private volatile int[] offsets;
+
+    /**
+     * Creates a matcher over the given sources.
+     *
+     * @param sources Sources in the order their items are numbered
+     * @param orderBy Ordering of the sources' results, used to rank results with a score offset
+     */
+    public MultiSourceMatcher(final List<Source<T>> sources, final OrderBy orderBy) {
+        this.sources = List.copyOf(sources);
+        this.orderBy = orderBy;
+        this.executor = Threads.newExecutor("fzf4j-source", Math.max(1, sources.size()));
+        updateOffsets();
+        this.sources.forEach(source -> source.getMatcher().addChangeListener(offsetsListener));
+    }
+
+    @Override
+    public List<Result<T>> match(final String pattern) {
+        return match(pattern, null);
+    }
+
+    @Override
+    public List<Result<T>> match(final String pattern, final ProgressListener<T> listener) {
+        return new Search(pattern, listener, offsets, false).run();
+    }
+
+    /**
+     * With {@link OrderBy#INDEX} the results of the sources are matched lazily and concatenated
+     * into {@link ResumableResults}. The results of a source only become available once all
+     * sources before it are matched completely.
+     *
+     * @param pattern  Pattern to match
+     * @param listener Listener receiving snapshots of complete matching or {@code null}
+     * @return Ranked results, possibly only partially available
+     */
+    @Override
+    public List<Result<T>> matchLazily(final String pattern, final ProgressListener<T> listener) {
+        if (orderBy != OrderBy.INDEX || pattern.isEmpty()) {
+            return match(pattern, listener);
+        }
+        return new Search(pattern, listener, offsets, true).run();
+    }
+
+    @Override
+    public int count(final String pattern) {
+        final var counts = new ArrayList<Future<Integer>>(sources.size());
+        for (final var source : sources) {
+            counts.add(executor.submit(() -> source.getMatcher().count(pattern)));
+        }
+        var count = 0;
+        for (final var sourceCount : await(counts)) {
+            count += sourceCount;
+        }
+        return count;
+    }
+
+    @Override
+    public void addChangeListener(final ChangeListener listener) {
+        sources.forEach(source -> source.getMatcher().addChangeListener(listener));
+    }
+
+    @Override
+    public void removeChangeListener(final ChangeListener listener) {
+        sources.forEach(source -> source.getMatcher().removeChangeListener(listener));
+    }
+
+    @Override
+    public int size() {
+        return offsets[sources.size()];
+    }
+
+    @Override
+    public T getItem(final int itemIndex) {
+        final var offsets = this.offsets;
+        final var source = source(offsets, itemIndex);
+        return sources.get(source).getMatcher().getItem(itemIndex - offsets[source]);
+    }
+
+    /**
+     * Source of an item.
+     *
+     * @param itemIndex Global index of the item
+     * @return Source containing the item
+     */
+    public Source<T> getSource(final int itemIndex) {
+        return sources.get(source(offsets, itemIndex));
+    }
+
+    /**
+     * Stops the threads matching the sources and stops listening to their changes.
+     */
+    @Override
+    public void close() {
+        sources.forEach(source -> source.getMatcher().removeChangeListener(offsetsListener));
+        executor.shutdownNow();
+    }
+
+    private synchronized void updateOffsets() {
+        final var offsets = new int[sources.size() + 1];
+        for (var source = 0; source < sources.size(); source++) {
+            offsets[source + 1] = offsets[source] + sources.get(source).getMatcher().size();
+        }
+        this.offsets = offsets;
+    }
+
+    private static int source(final int[] offsets, final int itemIndex) {
+        final var position = Arrays.binarySearch(offsets, itemIndex);
+        // Empty sources share their offset with the next source
+        var source = position >= 0 ? position : -position - 2;
+        while (source < offsets.length - 2 && offsets[source + 1] == itemIndex) {
+            source++;
+        }
+        return source;
+    }
+
+    /**
+     * Whether the results of a source are complete, only {@link ResumableResults} might not be.
+     */
+    private static boolean isSourceComplete(final List<?> results) {
+        return !(results instanceof ResumableResults)
+               || ((ResumableResults<?>) results).isComplete();
+    }
+
+    /**
+     * Waits for tasks, cancelling all of them if one fails or the caller is interrupted.
+     */
+    private static <V> List<V> await(final List<Future<V>> tasks) {
+        final var values = new ArrayList<V>(tasks.size());
+        try {
+            for (final var task : tasks) {
+                values.add(task.get());
+            }
+            return values;
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Matching interrupted");
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Matching failed", e.getCause());
+        }
+    }
+
+    /**
+     * Matches a pattern on all sources and publishes the merged results whenever a source
+     * publishes a snapshot or finishes.
+     */
+    private final class Search {
+
+        private final String pattern;
+        private final ProgressListener<T> listener;
+        private final int[] offsets;
+        private final boolean lazy;
+
+        // Guarded by this
+        private final List<List<Result<T>>> snapshots;
+        private final int[] scannedItems;
+
+        private Search(
+                final String pattern,
+                final ProgressListener<T> listener,
+                final int[] offsets,
+                final boolean lazy
+        ) {
+            this.pattern = pattern;
+            this.listener = listener;
+            this.offsets = offsets;
+            this.lazy = lazy;
+            this.snapshots = new ArrayList<>(Collections.nCopies(sources.size(), List.of()));
+            this.scannedItems = new int[sources.size()];
+        }
+
+        private List<Result<T>> run() {
+            final var tasks = new ArrayList<Future<List<Result<T>>>>(sources.size());
+            for (var source = 0; source < sources.size(); source++) {
+                final var sourceIndex = source;
+                tasks.add(executor.submit(() -> match(sourceIndex)));
+            }
+            final var results = await(tasks);
+            return lazy ? new ResumableConcatenatedResults(results, offsets) : merge(results);
+        }
+
+        private List<Result<T>> match(final int source) {
+            final var matcher = sources.get(source).getMatcher();
+            final ProgressListener<T> progress = listener != null
+                    ? (results, scanned, total) -> publish(source, results, scanned)
+                    : null;
+            final var results = lazy ? matcher.matchLazily(pattern, progress)
+                                     : matcher.match(pattern, progress);
+            if (listener != null) {
+                publish(source, results, offsets[source + 1] - offsets[source]);
+            }
+            return results;
+        }
+
+        /**
+         * Publishes the merged snapshots of all sources. Snapshots are published in the order
+         * they were taken.
+         */
+        private synchronized void publish(
+                final int source,
+                final List<Result<T>> results,
+                final int scanned
+        ) {
+            snapshots.set(source, results);
+            scannedItems[source] = scanned;
+            listener.onProgress(merge(List.copyOf(snapshots)), Arrays.stream(scannedItems).sum(),
+                                offsets[sources.size()]);
+        }
+
+        private List<Result<T>> merge(final List<List<Result<T>>> results) {
+            // Items of the empty pattern and results in input order are ordered by source
+            if (pattern.isEmpty() || orderBy == OrderBy.INDEX) {
+                return new ConcatenatedResults(results, offsets);
+            }
+            return new MergedResults(results, offsets);
+        }
+    }
+
+    /**
+     * Result of a source with its global item index and the source's score offset applied. The
+     * result itself is returned if neither changes it.
+     */
+    private Result<T> globalResult(final int source, final int[] offsets, final Result<T> result) {
+        final var scoreOffset = sources.get(source).getScoreOffset();
+        if (offsets[source] == 0 && scoreOffset == 0) {
+            return result;
+        }
+        final var itemIndex = offsets[source] + result.getItemIndex();
+        final var text = result.getText();
+        final var score = result.getScore() + scoreOffset;
+        // Approximate matches stay ranked after the exact ones
+        final var sortKey = scoreOffset == 0
+                            ? result.getSortKey()
+                            : orderBy.sortKey(score, OrderBy.trimmedLength(text),
+                                              result.getStart(), text.length() - result.getEnd())
+                              | result.getSortKey() & OrderBy.APPROXIMATE;
+        return new Result<>(result.getItem(), text, result.getStart(), result.getEnd(), score,
+                            result.getPositions(), itemIndex, sortKey);
+    }
+
+    /**
+     * Results of all sources one after the other. Results of a source that is not complete yet
+     * hide the results of the sources after it. The results are converted to global results on
+     * first access.
+     */
+    private class ConcatenatedResults extends AbstractList<Result<T>> implements RandomAccess {
+
+        private final List<List<Result<T>>> results;
+        private final int[] offsets;
+
+        // Guarded by this
+        private final List<List<Result<T>>> converted;
+
+        private ConcatenatedResults(final List<List<Result<T>>> results, final int[] offsets) {
+            this.results = results;
+            this.offsets = offsets;
+            this.converted = new ArrayList<>(results.size());
+            results.forEach(sourceResults -> converted.add(new ArrayList<>()));
+        }
+
+        @Override
+        public synchronized Result<T> get(final int index) {
+            var start = 0;
+            for (var source = 0; source < results.size() && index >= start; source++) {
+                final var sourceResults = results.get(source);
+                final var sourceIndex = index - start;
+                if (sourceIndex < sourceResults.size()) {
+                    final var globalResults = converted.get(source);
+                    while (globalResults.size() <= sourceIndex) {
+                        globalResults.add(globalResult(
+                                source, offsets, sourceResults.get(globalResults.size())));
+                    }
+                    return globalResults.get(sourceIndex);
+                }
+                if (!isSourceComplete(sourceResults)) {
+                    break;
+                }
+                start += sourceResults.size();
+            }
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public int size() {
+            var size = 0;
+            for (final var sourceResults : results) {
+                size += sourceResults.size();
+                if (!isSourceComplete(sourceResults)) {
+                    break;
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Results of all sources one after the other, matched lazily source by source.
+     */
+    private final class ResumableConcatenatedResults extends ConcatenatedResults
+            implements ResumableResults<T> {
+
+        private final CompletableFuture<Integer> totalCount;
+
+        private ResumableConcatenatedResults(
+                final List<List<Result<T>>> results,
+                final int[] offsets
+        ) {
+            super(results, offsets);
+            final var counts = new ArrayList<CompletableFuture<Integer>>(results.size());
+            for (final var sourceResults : results) {
+                counts.add(sourceResults instanceof ResumableResults
+                           ? ((ResumableResults<T>) sourceResults).getTotalCount()
+                           : CompletableFuture.completedFuture(sourceResults.size()));
+            }
+            this.totalCount = CompletableFuture.allOf(counts.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> counts.stream().mapToInt(CompletableFuture::join).sum());
+            totalCount.whenComplete((count, e) -> {
+                if (e instanceof CancellationException) {
+                    counts.forEach(sourceCount -> sourceCount.cancel(true));
+                }
+            });
+        }
+
+        @Override
+        public void resume(final int count) {
+            var found = 0;
+            for (final var sourceResults : super.results) {
+                if (found >= count) {
+                    return;
+                }
+                if (!isSourceComplete(sourceResults)) {
+                    ((ResumableResults<T>) sourceResults).resume(count - found);
+                    if (!isSourceComplete(sourceResults)) {
+                        return;
+                    }
+                }
+                found += sourceResults.size();
+            }
+        }
+
+        @Override
+        public boolean isComplete() {
+            return super.results.stream().allMatch(MultiSourceMatcher::isSourceComplete);
+        }
+
+        @Override
+        public CompletableFuture<Integer> getTotalCount() {
+            return totalCount;
+        }
+    }
+
+    /**
+     * Results of all sources merged on access. Each source's results keep their order.
+     */
+    private final class MergedResults extends AbstractList<Result<T>> implements RandomAccess {
+
+        private final List<Result<T>> merged = new ArrayList<>();
+        private final PriorityQueue<Cursor> heads;
+        private final int size;
+
+        private MergedResults(final List<List<Result<T>>> results, final int[] offsets) {
+            this.heads = new PriorityQueue<>(
+                    Math.max(1, results.size()),
+                    Comparator.comparing(Cursor::head, ResultComparator.INSTANCE));
+            var size = 0;
+            for (var source = 0; source < results.size(); source++) {
+                final var sourceResults = results.get(source);
+                if (!sourceResults.isEmpty()) {
+                    heads.add(new Cursor(source, offsets, sourceResults));
+                }
+                size += sourceResults.size();
+            }
+            this.size = size;
+        }
+
+        @Override
+        public synchronized Result<T> get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            while (merged.size() <= index) {
+                final var cursor = heads.poll();
+                merged.add(cursor.head());
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+            return merged.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Position in the ranked results of a source.
+     */
+    private final class Cursor {
+
+        private final int source;
+        private final int[] offsets;
+        private final List<Result<T>> results;
+        private int position = 0;
+        private Result<T> head;
+
+        private Cursor(final int source, final int[] offsets, final List<Result<T>> results) {
+            this.source = source;
+            this.offsets = offsets;
+            this.results = results;
+            this.head = globalResult(source, offsets, results.get(0));
+        }
+
+        private Result<T> head() {
+            return head;
+        }
+
+        private boolean advance() {
+            if (++position == results.size()) {
+                return false;
+            }
+            head = globalResult(source, offsets, results.get(position));
+            return true;
+        }
+    }
+}
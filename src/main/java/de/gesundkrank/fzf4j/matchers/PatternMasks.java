@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.Arrays;
+
+/**
+ * Bit masks of the characters of a pattern for bit-parallel matching. Bit {@code i} of the mask
+ * of a character is set if the pattern has this character at index {@code i}, so patterns can
+ * have at most {@link #MAX_LENGTH} characters.
+ */
+final class PatternMasks {
+
+    static final int MAX_LENGTH = Long.SIZE;
+
+    private static final int ASCII = 128;
+
+    /**
+     * LCS bit vectors of each text position, reused by {@link #alignment} of each thread.
+     */
+    private static final ThreadLocal<long[]> COLUMNS =
+            ThreadLocal.withInitial(() -> new long[256]);
+
+    private final int length;
+    private final char first;
+    private final long[] ascii = new long[ASCII];
+    private final char[] others;
+    private final long[] otherMasks;
+
+    PatternMasks(final String pattern) {
+        if (pattern.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Pattern too long: " + pattern.length());
+        }
+        this.length = pattern.length();
+        this.first = length > 0 ? pattern.charAt(0) : 0;
+
+        final var others = new char[length];
+        final var otherMasks = new long[length];
+        var otherCount = 0;
+        for (var i = 0; i < length; i++) {
+            final var c = pattern.charAt(i);
+            if (c < ASCII) {
+                ascii[c] |= 1L << i;
+                continue;
+            }
+            var other = 0;
+            while (other < otherCount && others[other] != c) {
+                other++;
+            }
+            if (other == otherCount) {
+                others[otherCount++] = c;
+            }
+            otherMasks[other] |= 1L << i;
+        }
+        this.others = Arrays.copyOf(others, otherCount);
+        this.otherMasks = Arrays.copyOf(otherMasks, otherCount);
+    }
+
+    int length() {
+        return length;
+    }
+
+    long mask(final char c) {
+        if (c < ASCII) {
+            return ascii[c];
+        }
+        for (var i = 0; i < others.length; i++) {
+            if (others[i] == c) {
+                return otherMasks[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the shortest prefix of a text that contains the pattern as subsequence. Bit {@code i}
+     * of the state is set once the first {@code i + 1} pattern characters have been found in
+     * order, each text character advances all prefixes it extends at once without branching on
+     * the pattern. The state stays empty until the first pattern character occurs, so the text
+     * up to it is skipped with {@link CharScanner#indexOf}. Selective patterns whose first
+     * character occurs late in most items are thus decided about as fast as by scanning for each
+     * pattern character.
+     *
+     * @param text Text
+     * @param from First index of the text
+     * @param to   End of the text, exclusive
+     * @return End of the prefix, exclusive, or {@code -1} if the pattern is no subsequence
+     */
+    int subsequenceEnd(final char[] text, final int from, final int to) {
+        var i = CharScanner.indexOf(text, from, to, first);
+        if (i == -1) {
+            return -1;
+        }
+        final var last = 1L << (length - 1);
+        var state = 0L;
+        while (i < to && (state & last) == 0) {
+            state |= (state << 1 | 1) & mask(text[i++]);
+        }
+        return (state & last) != 0 ? i : -1;
+    }
+
+    /**
+     * Length of the longest common subsequence of the pattern and a text, computed with the
+     * bit-parallel algorithm of Allison and Dix. A zero bit {@code i} in {@code v} marks that the
+     * LCS grows at pattern index {@code i}.
+     *
+     * @param text Text
+     * @param from First index of the text
+     * @param to   End of the text, exclusive
+     * @return Number of pattern characters that can be matched in order
+     */
+    int longestCommonSubsequence(final char[] text, final int from, final int to) {
+        var v = -1L;
+        for (var i = from; i < to; i++) {
+            final var u = v & mask(text[i]);
+            v = (v + u) | (v - u);
+        }
+        return Long.bitCount(~v & lowBits(length));
+    }
+
+    /**
+     * Positions in the text of a longest common subsequence with the pattern, if it has at least
+     * {@code minLength} characters. The bit vectors of
+     * {@link #longestCommonSubsequence(char[], int, int)} are kept for each text position in a
+     * buffer of the calling thread, they encode the full LCS table, which is then traced back
+     * from the end. Texts shorter than {@code minLength} are rejected without scanning them.
+     *
+     * @param text      Text
+     * @param from      First index of the text
+     * @param to        End of the text, exclusive
+     * @param minLength Minimum length of the subsequence
+     * @return Ascending indices of the matched text characters, or {@code null} if the longest
+     *     common subsequence is shorter than {@code minLength}
+     */
+    int[] alignment(final char[] text, final int from, final int to, final int minLength) {
+        if (to - from < minLength) {
+            return null;
+        }
+
+        var columns = COLUMNS.get();
+        if (columns.length <= to - from) {
+            columns = new long[Math.max(to - from + 1, columns.length * 2)];
+            COLUMNS.set(columns);
+        }
+        columns[0] = -1L;
+        for (var i = from; i < to; i++) {
+            final var v = columns[i - from];
+            final var u = v & mask(text[i]);
+            columns[i - from + 1] = (v + u) | (v - u);
+        }
+
+        var patternIndex = length;
+        var textIndex = to - from;
+        var matched = lcs(columns[textIndex], patternIndex);
+        if (matched < minLength) {
+            return null;
+        }
+        final var positions = new int[matched];
+
+        while (matched > 0) {
+            final var column = columns[textIndex];
+            if (lcs(column, patternIndex - 1) == matched) {
+                patternIndex--;
+            } else if (lcs(columns[textIndex - 1], patternIndex) == matched) {
+                textIndex--;
+            } else {
+                // LCS(i, j) > LCS(i - 1, j) and LCS(i, j - 1): characters match
+                positions[--matched] = from + textIndex - 1;
+                patternIndex--;
+                textIndex--;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * LCS of the first {@code patternLength} pattern characters and the text up to a column.
+     */
+    private static int lcs(final long column, final int patternLength) {
+        return Long.bitCount(~column & lowBits(patternLength));
+    }
+
+    private static long lowBits(final int count) {
+        return count == Long.SIZE ? -1L : (1L << count) - 1;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.List;
+
+import de.gesundkrank.fzf4j.models.Result;
+
+/**
+ * Receives ranked snapshots of the results while a {@link FuzzyMatcherV1} scans the items.
+ *
+ * @param <T> Type of the matched items
+ */
+@FunctionalInterface
+public interface ProgressListener<T> {
+
+    /**
+     * Called with the results of the items scanned so far, ranked like the final results.
+     *
+     * @param results      Ranked results of the scanned items
+     * @param scannedItems Number of scanned items
+     * @param totalItems   Number of all items
+     */
+    void onProgress(List<Result<T>> results, int scannedItems, int totalItems);
+}
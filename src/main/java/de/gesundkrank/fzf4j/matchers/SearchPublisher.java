@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResultPage;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.utils.Threads;
+
+/**
+ * Publishes ranked result pages for a stream of queries, e.g. the keystrokes of a search box in
+ * a reactive service. Each subscriber matches the queries in its own background thread.
+ *
+ * <p>Work follows the demand of the subscriber: queries arriving in a burst are conflated so only
+ * the latest one is matched, and only once the subscriber requested a page. A newer query cancels
+ * the match of the previous one and drops its remaining pages. Results are emitted in pages of
+ * {@code pageSize} results, one page per requested item, and matched only as far as the pages
+ * need if the matcher supports it, see {@link Matcher#matchLazily}. The subscriber completes
+ * after the queries completed and the last page of the latest query was emitted.
+ *
+ * @param <T> Type of the matched items
+ */
+public class SearchPublisher<T> implements Flow.Publisher<ResultPage<T>> {
+
+    private final Matcher<T> matcher;
+    private final Flow.Publisher<String> queries;
+    private final int pageSize;
+
+    /**
+     * Creates a publisher matching queries against a matcher.
+     *
+     * @param matcher  Matcher of the items
+     * @param queries  Publisher of the queries
+     * @param pageSize Number of results per page
+     */
+    public SearchPublisher(
+            final Matcher<T> matcher,
+            final Flow.Publisher<String> queries,
+            final int pageSize
+    ) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.matcher = matcher;
+        this.queries = queries;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ResultPage<T>> subscriber) {
+        final var subscription = new SearchSubscription<>(matcher, pageSize, subscriber);
+        subscriber.onSubscribe(subscription);
+        queries.subscribe(subscription);
+    }
+
+    /**
+     * Subscription of a subscriber, subscribed to the queries itself. All signals to the
+     * subscriber are sent by a single drain loop in the background thread.
+     */
+    private static final class SearchSubscription<T>
+            implements Flow.Subscription, Flow.Subscriber<String> {
+
+        private final Matcher<T> matcher;
+        private final int pageSize;
+        private final Flow.Subscriber<? super ResultPage<T>> downstream;
+        private final ExecutorService executor = Threads.newExecutor("fzf4j-search-publisher", 1);
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+
+        // Guarded by this
+        private Flow.Subscription upstream;
+        private long demand;
+        private String pendingQuery;
+        private String query;
+        private List<Result<T>> results;
+        private int offset;
+        private Thread matchingThread;
+        private boolean upstreamDone;
+        private Throwable error;
+        private boolean cancelled;
+        private boolean terminated;
+
+        private SearchSubscription(
+                final Matcher<T> matcher,
+                final int pageSize,
+                final Flow.Subscriber<? super ResultPage<T>> downstream
+        ) {
+            this.matcher = matcher;
+            this.pageSize = pageSize;
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void request(final long n) {
+            final Flow.Subscription subscription;
+            synchronized (this) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Non-positive request: " + n);
+                    subscription = upstream;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    subscription = null;
+                }
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            final Flow.Subscription subscription;
+            synchronized (this) {
+                cancelled = true;
+                interruptMatching();
+                subscription = upstream;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            drain();
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            synchronized (this) {
+                if (upstream != null || cancelled) {
+                    subscription.cancel();
+                    return;
+                }
+                upstream = subscription;
+            }
+            // Queries are requested one by one but conflated, matching follows the page demand
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(final String nextQuery) {
+            final Flow.Subscription subscription;
+            synchronized (this) {
+                pendingQuery = nextQuery;
+                dropResults();
+                interruptMatching();
+                subscription = upstream;
+            }
+            subscription.request(1);
+            drain();
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            synchronized (this) {
+                upstreamDone = true;
+                error = throwable;
+                interruptMatching();
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                upstreamDone = true;
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drainLoop);
+                } catch (RejectedExecutionException e) {
+                    // Terminated already
+                }
+            }
+        }
+
+        private void drainLoop() {
+            do {
+                emit();
+            } while (pendingDrains.decrementAndGet() != 0);
+        }
+
+        /**
+         * Matches pending queries and emits pages as long as the subscriber requests them.
+         */
+        private void emit() {
+            while (true) {
+                final String nextQuery;
+                final List<Result<T>> pageResults;
+                final int pageEnd;
+                final Throwable failure;
+                synchronized (this) {
+                    if (terminated) {
+                        return;
+                    }
+                    if (cancelled || error != null
+                        || upstreamDone && pendingQuery == null && results == null) {
+                        terminate();
+                        if (cancelled) {
+                            return;
+                        }
+                        failure = error;
+                        nextQuery = null;
+                        pageResults = null;
+                        pageEnd = 0;
+                    } else if (demand == 0) {
+                        return;
+                    } else if (pendingQuery != null) {
+                        nextQuery = pendingQuery;
+                        pendingQuery = null;
+                        matchingThread = Thread.currentThread();
+                        failure = null;
+                        pageResults = null;
+                        pageEnd = 0;
+                    } else if (results != null) {
+                        pageResults = results;
+                        pageEnd = offset + pageSize;
+                        failure = null;
+                        nextQuery = null;
+                    } else {
+                        return;
+                    }
+                }
+
+                if (nextQuery != null) {
+                    match(nextQuery);
+                } else if (pageResults != null) {
+                    emitPage(pageResults, pageEnd);
+                } else if (failure != null) {
+                    downstream.onError(failure);
+                    return;
+                } else {
+                    downstream.onComplete();
+                    return;
+                }
+            }
+        }
+
+        private void match(final String nextQuery) {
+            List<Result<T>> matched = null;
+            RuntimeException failure = null;
+            try {
+                matched = matcher.matchLazily(nextQuery, null);
+            } catch (CancellationException e) {
+                // Superseded by a newer query or cancelled
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                matchingThread = null;
+                // Clear an interrupt that arrived after the match finished
+                Thread.interrupted();
+                if (failure != null) {
+                    error = failure;
+                } else if (matched != null && pendingQuery == null && !cancelled) {
+                    query = nextQuery;
+                    results = matched;
+                    offset = 0;
+                }
+            }
+        }
+
+        /**
+         * Emits the next page of the results. Lazily matched results are resumed outside the lock,
+         * so new queries and cancellation don't wait for the scan, and the page is only emitted if
+         * the results haven't been replaced meanwhile.
+         */
+        private void emitPage(final List<Result<T>> pageResults, final int pageEnd) {
+            if (pageResults instanceof ResumableResults) {
+                ((ResumableResults<T>) pageResults).resume(pageEnd);
+            }
+
+            final ResultPage<T> page;
+            synchronized (this) {
+                if (results != pageResults || terminated || cancelled || demand == 0) {
+                    return;
+                }
+                page = nextPage();
+                demand--;
+            }
+            downstream.onNext(page);
+        }
+
+        /**
+         * Slices the next page off the results, dropping them after the last page.
+         */
+        private ResultPage<T> nextPage() {
+            final var end = Math.min(offset + pageSize, results.size());
+            final var complete = !(results instanceof ResumableResults)
+                                 || ((ResumableResults<T>) results).isComplete();
+            final var last = complete && end == results.size();
+            final var page = new ResultPage<>(
+                    query, List.copyOf(results.subList(offset, end)), offset,
+                    complete ? results.size() : -1, last
+            );
+            offset = end;
+            if (last) {
+                dropResults();
+            }
+            return page;
+        }
+
+        private void dropResults() {
+            if (results instanceof ResumableResults) {
+                ((ResumableResults<T>) results).getTotalCount().cancel(false);
+            }
+            results = null;
+        }
+
+        private void interruptMatching() {
+            if (matchingThread != null) {
+                matchingThread.interrupt();
+            }
+        }
+
+        private void terminate() {
+            terminated = true;
+            dropResults();
+            executor.shutdown();
+        }
+    }
+}
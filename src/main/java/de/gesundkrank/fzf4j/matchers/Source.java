@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+/**
+ * Named source of items matched by a {@link MultiSourceMatcher}, e.g. the local branches of a
+ * repository.
+ *
+ * @param <T> Type of the items
+ */
+public final class Source<T> {
+
+    private final String name;
+    private final Matcher<T> matcher;
+    private final int scoreOffset;
+
+    public Source(final String name, final Matcher<T> matcher) {
+        this(name, matcher, 0);
+    }
+
+    /**
+     * Creates a source whose results are ranked as if their scores were higher or lower.
+     *
+     * @param name        Name of the source
+     * @param matcher     Matcher of the source's items
+     * @param scoreOffset Offset added to the score of each result of this source
+     */
+    public Source(final String name, final Matcher<T> matcher, final int scoreOffset) {
+        this.name = name;
+        this.matcher = matcher;
+        this.scoreOffset = scoreOffset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Matcher<T> getMatcher() {
+        return matcher;
+    }
+
+    public int getScoreOffset() {
+        return scoreOffset;
+    }
+}
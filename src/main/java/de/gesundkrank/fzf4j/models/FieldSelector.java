@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.models;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Restricts matching to some fields of an item, like fzf's {@code --delimiter} and {@code --nth}.
+ *
+ * <p>Fields are separated by a delimiter regex and include the delimiter that ends them. Without a
+ * delimiter fields are split AWK-style at whitespace. Field expressions are 1-based, negative
+ * numbers count from the last field and ranges are written as {@code 2..4}, {@code 2..} or
+ * {@code ..-2}. Selected fields are matched in the order they appear in the item.
+ */
+public final class FieldSelector {
+
+    private static final int OPEN = 0;
+
+    private final String delimiter;
+    private final String nth;
+    private final Pattern delimiterPattern;
+    private final int[] from;
+    private final int[] to;
+
+    private FieldSelector(
+            final String delimiter,
+            final String nth,
+            final int[] from,
+            final int[] to
+    ) {
+        this.delimiter = delimiter;
+        this.nth = nth;
+        this.delimiterPattern = delimiter != null ? Pattern.compile(delimiter) : null;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Parses a field selection.
+     *
+     * @param delimiter Regex separating fields or {@code null} to split at whitespace
+     * @param nth       Comma separated field expressions, e.g. {@code 1,3..-1}
+     * @return Field selection
+     * @throws IllegalArgumentException if an expression or the delimiter is invalid
+     */
+    public static FieldSelector parse(final String delimiter, final String nth) {
+        final var expressions = nth.split(",");
+        final var from = new int[expressions.length];
+        final var to = new int[expressions.length];
+
+        for (var i = 0; i < expressions.length; i++) {
+            final var expression = expressions[i].trim();
+            final var range = expression.indexOf("..");
+            if (range == -1) {
+                from[i] = parseField(expression, nth);
+                to[i] = from[i];
+            } else {
+                from[i] = range == 0 ? OPEN : parseField(expression.substring(0, range), nth);
+                to[i] = range + 2 == expression.length()
+                        ? OPEN
+                        : parseField(expression.substring(range + 2), nth);
+            }
+        }
+        return new FieldSelector(delimiter, nth, from, to);
+    }
+
+    private static int parseField(final String field, final String nth) {
+        final int value;
+        try {
+            value = Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid field expression: " + nth, e);
+        }
+        if (value == OPEN) {
+            throw new IllegalArgumentException("Fields are 1-based: " + nth);
+        }
+        return value;
+    }
+
+    /**
+     * Computes the selected ranges of a text. Overlapping and adjacent fields are merged.
+     *
+     * @param text Text of an item
+     * @return Begin and end of each selected range, sorted by position
+     */
+    public int[] ranges(final CharSequence text) {
+        final var bounds = fieldBounds(text);
+        final var fieldCount = bounds.length - 1;
+        final var selected = new boolean[fieldCount];
+
+        for (var i = 0; i < from.length; i++) {
+            final var first = from[i] == OPEN ? 0 : resolve(from[i], fieldCount);
+            final var last = to[i] == OPEN ? fieldCount - 1 : resolve(to[i], fieldCount);
+            for (var field = Math.max(first, 0); field <= Math.min(last, fieldCount - 1);
+                 field++) {
+                selected[field] = true;
+            }
+        }
+
+        var ranges = new int[2 * fieldCount];
+        var count = 0;
+        for (var field = 0; field < fieldCount; field++) {
+            if (!selected[field]) {
+                continue;
+            }
+            if (count > 0 && ranges[count - 1] == bounds[field]) {
+                ranges[count - 1] = bounds[field + 1];
+            } else {
+                ranges[count++] = bounds[field];
+                ranges[count++] = bounds[field + 1];
+            }
+        }
+        return count == ranges.length ? ranges : Arrays.copyOf(ranges, count);
+    }
+
+    private static int resolve(final int field, final int fieldCount) {
+        return field > 0 ? field - 1 : fieldCount + field;
+    }
+
+    /**
+     * Start of each field followed by the end of the text.
+     */
+    private int[] fieldBounds(final CharSequence text) {
+        var bounds = new int[8];
+        var count = 0;
+        final var length = text.length();
+
+        if (delimiterPattern != null) {
+            final var matcher = delimiterPattern.matcher(text);
+            var start = 0;
+            while (start < length && matcher.find(start) && matcher.end() > matcher.start()) {
+                bounds = ensureCapacity(bounds, count + 1);
+                bounds[count++] = start;
+                start = matcher.end();
+            }
+            if (start < length) {
+                bounds = ensureCapacity(bounds, count + 1);
+                bounds[count++] = start;
+            }
+        } else {
+            // AWK-style: leading whitespace belongs to the first field, trailing to each field
+            var i = 0;
+            while (i < length) {
+                bounds = ensureCapacity(bounds, count + 1);
+                bounds[count++] = i;
+                while (i < length && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                while (i < length && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+
+        bounds = ensureCapacity(bounds, count + 1);
+        bounds[count++] = length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static int[] ensureCapacity(final int[] array, final int capacity) {
+        return capacity > array.length ? Arrays.copyOf(array, Math.max(capacity, array.length * 2))
+                                       : array;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public String getNth() {
+        return nth;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FieldSelector)) {
+            return false;
+        }
+        final var that = (FieldSelector) o;
+        return Objects.equals(delimiter, that.delimiter) && nth.equals(that.nth);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delimiter, nth);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldSelector{delimiter=" + delimiter + ", nth=" + nth + '}';
+    }
+}
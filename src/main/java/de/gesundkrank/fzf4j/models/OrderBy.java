@@ -22,6 +22,109 @@
 
 package de.gesundkrank.fzf4j.models;
 
+/**
+ * Result ordering. Ties are broken fzf-style by score, length of the item, begin of the match,
+ * distance of the match end to the end of the item and finally by the index of the item.
+ *
+ * <p>All criteria but the item index are packed into a single sort key per result, see
+ * {@link #sortKey(int, int, int, int)}. From the highest to the lowest bits the key holds
+ * <pre>
+ *   1 bit   {@link #APPROXIMATE}, set for matches with typos
+ *   15 bits primary criterion, the negated score or the length of the item
+ *   16 bits secondary criterion, the length of the item or the negated score
+ *   16 bits begin of the match
+ *   16 bits distance of the match end to the end of the item
+ * </pre>
+ * Each criterion is clamped to its bits. Smaller keys, compared as unsigned values, are ranked
+ * first, so exact matches come before all matches with typos.
+ */
 public enum OrderBy {
-    SCORE, LENGTH
+    /**
+     * Highest score first, then shortest item, earliest begin of the match and smallest
+     * distance of the match end to the end of the item.
+     */
+    SCORE,
+    /**
+     * Shortest item first, then highest score, earliest begin of the match and smallest
+     * distance of the match end to the end of the item.
+     */
+    LENGTH,
+    /**
+     * Input order without sorting, like fzf's {@code --no-sort}. When matching lazily, items are
+     * only matched until enough results are found to fill the view, see
+     * {@link de.gesundkrank.fzf4j.matchers.Matcher#matchLazily} and {@link ResumableResults}.
+     */
+    INDEX;
+
+    /**
+     * Flag of the sort keys of approximate matches, see {@link #approximate(long)}.
+     */
+    public static final long APPROXIMATE = 1L << 63;
+
+    private static final int MAX_VALUE = 0xffff;
+    private static final int MAX_PRIMARY = 0x7fff;
+
+    /**
+     * Packs the ranking criteria of a result into a single key.
+     *
+     * @param score  Score of the result
+     * @param length Length of the item without leading and trailing whitespace
+     * @param begin  Begin of the match
+     * @param end    Distance of the end of the match to the end of the item
+     * @return Sort key, smaller keys are ranked first
+     */
+    public long sortKey(final int score, final int length, final int begin, final int end) {
+        if (this == INDEX) {
+            // Ties are broken by the item index
+            return 0;
+        }
+
+        final long scoreKey = Short.MAX_VALUE / 2 - (long) score;
+
+        final long primary;
+        final long secondary;
+        if (this == LENGTH) {
+            primary = clamp(length, MAX_PRIMARY);
+            secondary = clamp(scoreKey, MAX_VALUE);
+        } else {
+            primary = clamp(scoreKey, MAX_PRIMARY);
+            secondary = clamp(length, MAX_VALUE);
+        }
+        return primary << 48 | secondary << 32 | clamp(begin, MAX_VALUE) << 16
+               | clamp(end, MAX_VALUE);
+    }
+
+    /**
+     * Marks the sort key of an approximate match, ranking it after all exact matches. Keys in
+     * input order are left unchanged, as exact and approximate matches are not separated there.
+     *
+     * @param sortKey Sort key of a match with typos
+     * @return Sort key with {@link #APPROXIMATE} set
+     */
+    public long approximate(final long sortKey) {
+        return this == INDEX ? sortKey : sortKey | APPROXIMATE;
+    }
+
+    /**
+     * Length of a text without leading and trailing whitespace, computed without creating a
+     * trimmed copy of the text.
+     *
+     * @param text to be measured
+     * @return Trimmed length
+     */
+    public static int trimmedLength(final CharSequence text) {
+        var start = 0;
+        var end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end - start;
+    }
+
+    private static long clamp(final long value, final int max) {
+        return Math.max(0, Math.min(value, max));
+    }
 }
@@ -24,32 +24,77 @@ package de.gesundkrank.fzf4j.models;
 
 import java.util.Arrays;
 
-public class Result {
+/**
+ * Match of a pattern in an item.
+ *
+ * @param <T> Type of the matched items
+ */
+public class Result<T> {
 
-    public static Result empty(final String text, int itemIndex) {
-        return new Result(text, 0, 0, 0, null, itemIndex);
+    public static <T> Result<T> empty(final T item, final String text, int itemIndex) {
+        return new Result<>(item, text, 0, 0, 0, null, itemIndex);
     }
 
-    public static Result noMatch(final String text, int itemIndex) {
-        return new Result(text, -1, -1, 0, null, itemIndex);
+    public static <T> Result<T> noMatch(final T item, final String text, int itemIndex) {
+        return new Result<>(item, text, -1, -1, 0, null, itemIndex);
     }
 
+    private final T item;
     private final String text;
     private final int start;
     private final int end;
     private final int score;
     private final int[] positions;
     private final int itemIndex;
+    private final long sortKey;
+
+    public Result(
+            T item,
+            String text,
+            int start,
+            int end,
+            int score,
+            int[] positions,
+            int itemIndex
+    ) {
+        this(item, text, start, end, score, positions, itemIndex, OrderBy.SCORE.sortKey(
+                score, OrderBy.trimmedLength(text), start, text.length() - end));
+    }
 
-    public Result(String text, int start, int end, int score, int[] positions, int itemIndex) {
+    public Result(
+            T item,
+            String text,
+            int start,
+            int end,
+            int score,
+            int[] positions,
+            int itemIndex,
+            long sortKey
+    ) {
+        this.item = item;
         this.text = text;
         this.start = start;
         this.end = end;
         this.score = score;
         this.positions = positions;
         this.itemIndex = itemIndex;
+        this.sortKey = sortKey;
     }
 
+    /**
+     * Original item, as passed to the matcher.
+     *
+     * @return Matched item
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * Text the pattern was matched against, the key extracted from the item.
+     *
+     * @return Text of the item
+     */
     public String getText() {
         return text;
     }
@@ -78,6 +123,15 @@ public class Result {
         return itemIndex;
     }
 
+    /**
+     * Ranking criteria packed by {@link OrderBy#sortKey(int, int, int, int)}.
+     *
+     * @return Sort key, smaller keys are ranked first
+     */
+    public long getSortKey() {
+        return sortKey;
+    }
+
     @Override
     public String toString() {
         return "Result{"
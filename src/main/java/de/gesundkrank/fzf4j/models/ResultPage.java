@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.models;
+
+import java.util.List;
+
+/**
+ * Consecutive ranked results of a query, as emitted by a
+ * {@link de.gesundkrank.fzf4j.matchers.SearchPublisher}.
+ *
+ * @param <T> Type of the matched items
+ */
+public class ResultPage<T> {
+
+    private final String query;
+    private final List<Result<T>> results;
+    private final int offset;
+    private final int totalResults;
+    private final boolean last;
+
+    public ResultPage(
+            String query,
+            List<Result<T>> results,
+            int offset,
+            int totalResults,
+            boolean last
+    ) {
+        this.query = query;
+        this.results = results;
+        this.offset = offset;
+        this.totalResults = totalResults;
+        this.last = last;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<Result<T>> getResults() {
+        return results;
+    }
+
+    /**
+     * Rank of the first result of the page within all results of the query.
+     *
+     * @return Offset of the page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Number of all results of the query.
+     *
+     * @return Number of results or -1 if results in input order are still being counted
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+
+    /**
+     * Whether this is the last page of the query.
+     *
+     * @return {@code true} if no more pages of the query follow
+     */
+    public boolean isLast() {
+        return last;
+    }
+}
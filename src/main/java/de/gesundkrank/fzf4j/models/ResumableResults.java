@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.models;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Results that are only partially available, e.g. matched in input order on demand or the best
+ * results transferred by a remote matcher. The list contains the results available so far,
+ * {@link #resume(int)} makes further ones available if possible. The total number of matches is
+ * counted in the background.
+ *
+ * @param <T> Type of the matched items
+ */
+public interface ResumableResults<T> extends List<Result<T>> {
+
+    /**
+     * Scans further items until at least {@code count} results are found or all items are
+     * scanned. Does nothing if no further results can be made available.
+     *
+     * @param count Number of results to find
+     */
+    void resume(int count);
+
+    /**
+     * Whether all results are available.
+     *
+     * @return {@code true} if the list contains all results
+     */
+    boolean isComplete();
+
+    /**
+     * Total number of results, completed once they are counted. Cancelling it stops counting.
+     *
+     * @return Future of the total number of results
+     */
+    CompletableFuture<Integer> getTotalCount();
+}
@@ -26,15 +26,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class TerminalState {
+/**
+ * State of the terminal user interface.
+ *
+ * @param <T> Type of the items
+ */
+public class TerminalState<T> {
 
     private int cursorItem = 0;
     private int cursorPosition = 0;
     private String query = "";
-    private List<Result> results;
+    private List<Result<T>> results;
     private Set<Integer> selectedItems = new HashSet<>();
+    private double scanProgress = 1;
+    private int pageSize = 0;
 
-    public TerminalState(final List<Result> results) {
+    public TerminalState(final List<Result<T>> results) {
         this.results = results;
     }
 
@@ -50,7 +57,7 @@ public class TerminalState {
         return query;
     }
 
-    public List<Result> getResults() {
+    public List<Result<T>> getResults() {
         return results;
     }
 
@@ -58,6 +65,22 @@ public class TerminalState {
         return results.size();
     }
 
+    /**
+     * Total number of results, which differs from {@link #getItemsSize()} for
+     * {@link ResumableResults} that were only partially scanned.
+     *
+     * @return Number of results or -1 if they are still being counted
+     */
+    public int getMatchCount() {
+        if (results instanceof ResumableResults) {
+            final var totalCount = ((ResumableResults<T>) results).getTotalCount();
+            return totalCount.isDone() && !totalCount.isCompletedExceptionally()
+                   ? totalCount.join()
+                   : -1;
+        }
+        return results.size();
+    }
+
     public void setCursorItem(int cursorItem) {
         this.cursorItem = cursorItem;
     }
@@ -70,11 +93,88 @@ public class TerminalState {
         this.query = query;
     }
 
-    public void setResults(List<Result> results) {
+    public void setResults(List<Result<T>> results) {
+        if (this.results instanceof ResumableResults && this.results != results) {
+            // Stop counting the results of the previous query
+            ((ResumableResults<T>) this.results).getTotalCount().cancel(false);
+        }
         this.results = results;
         this.cursorItem = results.size() == 0
                             ? -1
-                            : Math.min(cursorItem, results.size() - 1);
+                            : Math.min(Math.max(cursorItem, 0), results.size() - 1);
+    }
+
+    /**
+     * Replaces the results by a newer snapshot of the same query. Unless it is on the first
+     * result, the cursor stays on its item if the snapshot still contains it within a page of
+     * the cursor. Only that window is looked at, so lazily ranked results aren't fully ranked.
+     *
+     * @param results Ranked results
+     */
+    public void updateResults(List<Result<T>> results) {
+        if (cursorItem > 0) {
+            final var itemIndex = getCursorResult().getItemIndex();
+            final var window = Math.max(pageSize, 1);
+            final var end = Math.min(cursorItem + window + 1, results.size());
+            for (var i = Math.max(cursorItem - window, 0); i < end; i++) {
+                if (results.get(i).getItemIndex() == itemIndex) {
+                    this.results = results;
+                    this.cursorItem = i;
+                    return;
+                }
+            }
+        }
+        setResults(results);
+    }
+
+    /**
+     * Sets the number of results shown at once, see {@link #loadAhead()}.
+     *
+     * @param pageSize Number of visible results
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Scans {@link ResumableResults} until they contain a page beyond the cursor, so the cursor
+     * can always move a page down. Results of a new query are scanned from the cursor it was
+     * reset to by {@link #setResults(List)}, which is put on the first result once one is found.
+     *
+     * <p>Scanning may take a while, so callers must not hold the lock of this state. It is only
+     * locked to read and update the cursor.
+     */
+    public void loadAhead() {
+        final ResumableResults<T> resumable;
+        final int count;
+        synchronized (this) {
+            if (!(results instanceof ResumableResults)) {
+                return;
+            }
+            resumable = (ResumableResults<T>) results;
+            count = Math.max(cursorItem, 0) + pageSize + 1;
+        }
+
+        resumable.resume(count);
+
+        synchronized (this) {
+            if (results == resumable && cursorItem == -1 && !resumable.isEmpty()) {
+                cursorItem = 0;
+            }
+        }
+    }
+
+    /**
+     * Share of the items scanned for the current results, 1 if the results are complete.
+     *
+     * @return Scanned share between 0 and 1
+     */
+    public double getScanProgress() {
+        return scanProgress;
+    }
+
+    public void setScanProgress(double scanProgress) {
+        this.scanProgress = scanProgress;
     }
 
     public Set<Integer> getSelectedItems() {
@@ -85,7 +185,7 @@ public class TerminalState {
         this.selectedItems = selectedItems;
     }
 
-    public Result getCursorResult() {
+    public Result<T> getCursorResult() {
         return results.get(cursorItem);
     }
 }
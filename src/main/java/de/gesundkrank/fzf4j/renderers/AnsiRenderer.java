@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.renderers;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.googlecode.lanterna.SGR;
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.TextCharacter;
+import com.googlecode.lanterna.input.KeyStroke;
+import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
+import com.googlecode.lanterna.terminal.Terminal;
+
+/**
+ * Lightweight renderer composing each frame into one reusable buffer of ANSI escape sequences,
+ * written to the terminal with a single call. Unlike a Lanterna screen it doesn't diff frames
+ * against the previous one, a frame of the list view changes most of its rows anyway. The
+ * Lanterna terminal is only used to switch to the private mode and to read key strokes and the
+ * terminal size.
+ */
+public class AnsiRenderer implements Renderer {
+
+    private static final byte ESCAPE = 0x1b;
+    private static final int INITIAL_FRAME_SIZE = 16 * 1024;
+
+    private final OutputStream out;
+
+    private Terminal terminal;
+    private TerminalSize size;
+    private volatile TerminalSize newSize;
+    private TextCharacter[] cells;
+    private int cursorColumn;
+    private int cursorRow;
+
+    private byte[] frame = new byte[INITIAL_FRAME_SIZE];
+    private int frameLength;
+
+    /**
+     * Creates a renderer for the terminal of the process, writing frames to the standard output.
+     */
+    public AnsiRenderer() {
+        this(null, new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * Creates a renderer reading input and the size from a terminal, but writing the frames to a
+     * stream.
+     *
+     * @param terminal Terminal or {@code null} to create one for the process
+     * @param out      Stream receiving the frames
+     */
+    public AnsiRenderer(final Terminal terminal, final OutputStream out) {
+        this.terminal = terminal;
+        this.out = out;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (terminal == null) {
+            terminal = new DefaultTerminalFactory().createTerminal();
+        }
+        terminal.enterPrivateMode();
+        terminal.flush();
+        terminal.addResizeListener((source, terminalSize) -> newSize = terminalSize);
+        resize(terminal.getTerminalSize());
+    }
+
+    private void resize(final TerminalSize size) {
+        this.size = size;
+        this.cells = new TextCharacter[size.getColumns() * size.getRows()];
+        clear();
+    }
+
+    @Override
+    public TerminalSize getTerminalSize() {
+        return size;
+    }
+
+    @Override
+    public boolean resizeIfNecessary() {
+        final var resized = newSize;
+        if (resized == null || resized.equals(size)) {
+            return false;
+        }
+        resize(resized);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, TextCharacter.DEFAULT_CHARACTER);
+    }
+
+    @Override
+    public void setCharacter(final int column, final int row, final TextCharacter character) {
+        if (column >= 0 && column < size.getColumns() && row >= 0 && row < size.getRows()) {
+            cells[row * size.getColumns() + column] = character;
+        }
+    }
+
+    @Override
+    public void setCursorPosition(final int column, final int row) {
+        cursorColumn = column;
+        cursorRow = row;
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        frameLength = 0;
+        final var columns = size.getColumns();
+        TextCharacter style = null;
+
+        for (var row = 0; row < size.getRows(); row++) {
+            moveTo(0, row);
+            for (var column = 0; column < columns; column++) {
+                final var cell = cells[row * columns + column];
+                if (style == null || !sameStyle(style, cell)) {
+                    appendStyle(cell);
+                    style = cell;
+                }
+                appendChar(cell.getCharacter());
+            }
+        }
+
+        append(ESCAPE).append((byte) '[').append((byte) '0').append((byte) 'm');
+        moveTo(cursorColumn, cursorRow);
+        out.write(frame, 0, frameLength);
+        out.flush();
+    }
+
+    /**
+     * Bytes of the last frame, e.g. to inspect them in tests.
+     *
+     * @return Copy of the frame
+     */
+    public byte[] getFrame() {
+        return Arrays.copyOf(frame, frameLength);
+    }
+
+    private static boolean sameStyle(final TextCharacter first, final TextCharacter second) {
+        return first.getForegroundColor().equals(second.getForegroundColor())
+               && first.getBackgroundColor().equals(second.getBackgroundColor())
+               && first.getModifiers().equals(second.getModifiers());
+    }
+
+    private void moveTo(final int column, final int row) {
+        append(ESCAPE).append((byte) '[').appendNumber(row + 1).append((byte) ';')
+                .appendNumber(column + 1).append((byte) 'H');
+    }
+
+    private void appendStyle(final TextCharacter cell) {
+        append(ESCAPE).append((byte) '[').append((byte) '0').append((byte) ';')
+                .append(cell.getForegroundColor().getForegroundSGRSequence()).append((byte) ';')
+                .append(cell.getBackgroundColor().getBackgroundSGRSequence());
+        for (final var modifier : cell.getModifiers()) {
+            final var code = sgrCode(modifier);
+            if (code != -1) {
+                append((byte) ';').appendNumber(code);
+            }
+        }
+        append((byte) 'm');
+    }
+
+    private static int sgrCode(final SGR modifier) {
+        switch (modifier) {
+            case BOLD:
+                return 1;
+            case ITALIC:
+                return 3;
+            case UNDERLINE:
+                return 4;
+            case BLINK:
+                return 5;
+            case REVERSE:
+                return 7;
+            case CROSSED_OUT:
+                return 9;
+            default:
+                return -1;
+        }
+    }
+
+    private void appendChar(final char c) {
+        // UTF-8, surrogates are written as replacement character as they take a single cell here.
+        // So are C0 and C1 control characters, the terminal would interpret them instead.
+        if (c < 0x20 || c >= 0x7f && c < 0xa0) {
+            append((byte) '?');
+        } else if (c < 0x80) {
+            append((byte) c);
+        } else if (c < 0x800) {
+            append((byte) (0xc0 | c >> 6)).append((byte) (0x80 | c & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            append((byte) '?');
+        } else {
+            append((byte) (0xe0 | c >> 12)).append((byte) (0x80 | c >> 6 & 0x3f))
+                    .append((byte) (0x80 | c & 0x3f));
+        }
+    }
+
+    private AnsiRenderer appendNumber(final int number) {
+        if (number >= 10) {
+            appendNumber(number / 10);
+        }
+        return append((byte) ('0' + number % 10));
+    }
+
+    private AnsiRenderer append(final byte[] bytes) {
+        for (final var b : bytes) {
+            append(b);
+        }
+        return this;
+    }
+
+    private AnsiRenderer append(final byte b) {
+        if (frameLength == frame.length) {
+            frame = Arrays.copyOf(frame, frame.length * 2);
+        }
+        frame[frameLength++] = b;
+        return this;
+    }
+
+    @Override
+    public KeyStroke readInput() throws IOException {
+        return terminal.readInput();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (terminal != null) {
+            terminal.exitPrivateMode();
+            terminal.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.renderers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.googlecode.lanterna.TerminalPosition;
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.TextCharacter;
+import com.googlecode.lanterna.input.KeyStroke;
+
+/**
+ * Renderer keeping frames in memory instead of drawing them, so views can be tested and their
+ * render cost can be benchmarked without a terminal. Key strokes are read from a queue.
+ */
+public class HeadlessRenderer implements Renderer {
+
+    private final TerminalSize size;
+    private final TextCharacter[] cells;
+    private final BlockingQueue<KeyStroke> input = new LinkedBlockingQueue<>();
+
+    private TextCharacter[] frame;
+    private TerminalPosition cursorPosition = TerminalPosition.TOP_LEFT_CORNER;
+    private TerminalPosition frameCursorPosition = TerminalPosition.TOP_LEFT_CORNER;
+    private int frameCount = 0;
+
+    public HeadlessRenderer(final int columns, final int rows) {
+        this.size = new TerminalSize(columns, rows);
+        this.cells = new TextCharacter[columns * rows];
+        clear();
+        this.frame = cells.clone();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public TerminalSize getTerminalSize() {
+        return size;
+    }
+
+    @Override
+    public boolean resizeIfNecessary() {
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, TextCharacter.DEFAULT_CHARACTER);
+    }
+
+    @Override
+    public void setCharacter(final int column, final int row, final TextCharacter character) {
+        if (column >= 0 && column < size.getColumns() && row >= 0 && row < size.getRows()) {
+            cells[row * size.getColumns() + column] = character;
+        }
+    }
+
+    @Override
+    public void setCursorPosition(final int column, final int row) {
+        cursorPosition = new TerminalPosition(column, row);
+    }
+
+    @Override
+    public synchronized void refresh() {
+        frame = cells.clone();
+        frameCursorPosition = cursorPosition;
+        frameCount++;
+    }
+
+    /**
+     * Queues a key stroke returned by {@link #readInput()}.
+     *
+     * @param keyStroke Key stroke
+     */
+    public void addInput(final KeyStroke keyStroke) {
+        input.add(keyStroke);
+    }
+
+    @Override
+    public KeyStroke readInput() throws IOException {
+        try {
+            return input.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Rows of the last frame without trailing whitespace.
+     *
+     * @return Text of the rows
+     */
+    public synchronized List<String> getLines() {
+        final var lines = new ArrayList<String>(size.getRows());
+        final var line = new StringBuilder();
+        for (var row = 0; row < size.getRows(); row++) {
+            line.setLength(0);
+            for (var column = 0; column < size.getColumns(); column++) {
+                line.append(frame[row * size.getColumns() + column].getCharacter());
+            }
+            lines.add(line.toString().stripTrailing());
+        }
+        return lines;
+    }
+
+    /**
+     * Character of the last frame.
+     *
+     * @param column Column
+     * @param row    Row
+     * @return Character with its colors and modifiers
+     */
+    public synchronized TextCharacter getCharacter(final int column, final int row) {
+        return frame[row * size.getColumns() + column];
+    }
+
+    public synchronized TerminalPosition getCursorPosition() {
+        return frameCursorPosition;
+    }
+
+    /**
+     * Number of refreshed frames.
+     *
+     * @return Frame count
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() {
+    }
+}
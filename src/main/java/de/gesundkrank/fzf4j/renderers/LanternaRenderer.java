@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.renderers;
+
+import java.io.IOException;
+
+import com.googlecode.lanterna.TerminalPosition;
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.TextCharacter;
+import com.googlecode.lanterna.input.KeyStroke;
+import com.googlecode.lanterna.screen.Screen;
+import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
+
+/**
+ * Default renderer drawing to a Lanterna {@link Screen}.
+ */
+public class LanternaRenderer implements Renderer {
+
+    private Screen screen;
+
+    @Override
+    public void start() throws IOException {
+        screen = new DefaultTerminalFactory().createScreen();
+        screen.startScreen();
+    }
+
+    @Override
+    public TerminalSize getTerminalSize() {
+        return screen.getTerminalSize();
+    }
+
+    @Override
+    public boolean resizeIfNecessary() {
+        return screen.doResizeIfNecessary() != null;
+    }
+
+    @Override
+    public void clear() {
+        screen.clear();
+    }
+
+    @Override
+    public void setCharacter(final int column, final int row, final TextCharacter character) {
+        screen.setCharacter(column, row, character);
+    }
+
+    @Override
+    public void putString(final int column, final int row, final String text) {
+        screen.newTextGraphics().putString(column, row, text);
+    }
+
+    @Override
+    public void setCursorPosition(final int column, final int row) {
+        screen.setCursorPosition(new TerminalPosition(column, row));
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        screen.refresh();
+    }
+
+    @Override
+    public KeyStroke readInput() throws IOException {
+        return screen.readInput();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (screen != null) {
+            screen.stopScreen();
+            screen.close();
+        }
+    }
+}
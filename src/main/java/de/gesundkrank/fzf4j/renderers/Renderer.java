@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.renderers;
+
+import java.io.IOException;
+
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.TextCharacter;
+import com.googlecode.lanterna.input.KeyStroke;
+
+/**
+ * Backend drawing the frames of a {@link de.gesundkrank.fzf4j.View} and reading key strokes.
+ * Characters are drawn into a back buffer that is shown by {@link #refresh()}.
+ */
+public interface Renderer extends AutoCloseable {
+
+    /**
+     * Initializes the terminal, e.g. switches it to the private mode.
+     *
+     * @throws IOException if the terminal can't be initialized
+     */
+    void start() throws IOException;
+
+    TerminalSize getTerminalSize();
+
+    /**
+     * Adapts the back buffer to the terminal size if it changed since the last call.
+     *
+     * @return {@code true} if the size changed
+     */
+    boolean resizeIfNecessary();
+
+    /**
+     * Clears the back buffer.
+     */
+    void clear();
+
+    void setCharacter(int column, int row, TextCharacter character);
+
+    /**
+     * Draws a string with the default colors, characters outside of the buffer are ignored.
+     *
+     * @param column First column
+     * @param row    Row
+     * @param text   Text to draw
+     */
+    default void putString(final int column, final int row, final String text) {
+        for (var i = 0; i < text.length(); i++) {
+            setCharacter(column + i, row, new TextCharacter(text.charAt(i)));
+        }
+    }
+
+    void setCursorPosition(int column, int row);
+
+    /**
+     * Shows the back buffer.
+     *
+     * @throws IOException if the terminal can't be written
+     */
+    void refresh() throws IOException;
+
+    /**
+     * Waits for the next key stroke.
+     *
+     * @return Key stroke
+     * @throws IOException if the terminal can't be read
+     */
+    KeyStroke readInput() throws IOException;
+
+    /**
+     * Restores the terminal.
+     *
+     * @throws IOException if the terminal can't be restored
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -27,20 +27,31 @@ import java.util.Comparator;
 import de.gesundkrank.fzf4j.models.OrderBy;
 import de.gesundkrank.fzf4j.models.Result;
 
-public class ResultComparator implements Comparator<Result> {
+/**
+ * Orders results by their {@link Result#getSortKey() sort key}, compared as unsigned value, and
+ * item index.
+ */
+public class ResultComparator implements Comparator<Result<?>> {
 
-    private final OrderBy orderBy;
+    public static final ResultComparator INSTANCE = new ResultComparator();
 
-    public ResultComparator(final OrderBy orderBy) {
+    public ResultComparator() {
+    }
 
-        this.orderBy = orderBy;
+    /**
+     * Creates a comparator for results of a matcher ordering by the given criteria.
+     *
+     * @param orderBy Order of the matcher, already packed into the sort key of its results
+     * @deprecated The order is part of the sort key of each result, use {@link #INSTANCE}.
+     */
+    @Deprecated
+    public ResultComparator(final OrderBy orderBy) {
+        this();
     }
 
     @Override
-    public int compare(Result r1, Result r2) {
-        if (orderBy == OrderBy.SCORE) {
-            return Integer.compare(r2.getScore(), r1.getScore());
-        }
-        return Integer.compare(r1.getText().trim().length(), r2.getText().trim().length());
+    public int compare(Result<?> r1, Result<?> r2) {
+        final var keyOrder = Long.compareUnsigned(r1.getSortKey(), r2.getSortKey());
+        return keyOrder != 0 ? keyOrder : Integer.compare(r1.getItemIndex(), r2.getItemIndex());
     }
 }
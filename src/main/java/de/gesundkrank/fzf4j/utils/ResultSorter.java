@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.utils;
+
+import java.util.Arrays;
+
+import de.gesundkrank.fzf4j.models.Result;
+
+/**
+ * Sorts results in the order of {@link ResultComparator} using a radix sort over their packed
+ * sort keys. Sorting is stable, so results have to be passed in ascending item index order.
+ */
+public final class ResultSorter {
+
+    private static final int SMALL_SORT_THRESHOLD = 64;
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    private ResultSorter() {
+    }
+
+    public static void sort(final Result<?>[] results) {
+        final var size = results.length;
+        if (size < SMALL_SORT_THRESHOLD) {
+            Arrays.sort(results, ResultComparator.INSTANCE);
+            return;
+        }
+
+        var keys = new long[size];
+        for (var i = 0; i < size; i++) {
+            keys[i] = results[i].getSortKey();
+        }
+
+        var source = results;
+        Result<?>[] target = new Result<?>[size];
+        var targetKeys = new long[size];
+        final var counts = new int[RADIX_MASK + 2];
+
+        for (var shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (final var key : keys) {
+                counts[digit(key, shift) + 1]++;
+            }
+
+            // Skip passes in which all keys have the same digit
+            if (counts[digit(keys[0], shift) + 1] == size) {
+                continue;
+            }
+
+            for (var i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (var i = 0; i < size; i++) {
+                final var position = counts[digit(keys[i], shift)]++;
+                target[position] = source[i];
+                targetKeys[position] = keys[i];
+            }
+
+            final var swap = source;
+            source = target;
+            target = swap;
+            final var swapKeys = keys;
+            keys = targetKeys;
+            targetKeys = swapKeys;
+        }
+
+        if (source != results) {
+            System.arraycopy(source, 0, results, 0, size);
+        }
+    }
+
+    /**
+     * Merges two sorted arrays of results into a new sorted array.
+     *
+     * @param first  Sorted results
+     * @param second Sorted results
+     * @param <R>    Type of the results
+     * @return Sorted results of both arrays
+     */
+    public static <R extends Result<?>> R[] merge(final R[] first, final R[] second) {
+        if (second.length == 0) {
+            return first;
+        } else if (first.length == 0) {
+            return second;
+        }
+
+        final var merged = Arrays.copyOf(first, first.length + second.length);
+        var i = 0;
+        var j = 0;
+        for (var k = 0; k < merged.length; k++) {
+            final var takeFirst = j == second.length
+                                  || i < first.length
+                                     && ResultComparator.INSTANCE.compare(first[i], second[j]) <= 0;
+            if (takeFirst) {
+                merged[k] = first[i++];
+            } else {
+                merged[k] = second[j++];
+            }
+        }
+        return merged;
+    }
+
+    private static int digit(final long key, final int shift) {
+        return (int) (key >>> shift) & RADIX_MASK;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scans character arrays for single characters using the Vector API if the
+ * {@code jdk.incubator.vector} module is available, e.g. by running with
+ * {@code --add-modules jdk.incubator.vector}. Falls back to scalar loops otherwise.
+ */
+final class CharScanner {
+
+    private static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private CharScanner() {
+    }
+
+    /**
+     * Finds the first occurrence of a character in a range.
+     *
+     * @return Index of the character or -1 if the range doesn't contain it
+     */
+    static int indexOf(final char[] chars, final int from, final int to, final char c) {
+        if (VECTORIZED && to - from >= VectorScanner.MIN_LENGTH) {
+            return VectorScanner.indexOf(chars, from, to, c);
+        }
+        for (var i = from; i < to; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last occurrence of a character in a range.
+     *
+     * @return Index of the character or -1 if the range doesn't contain it
+     */
+    static int lastIndexOf(final char[] chars, final int from, final int to, final char c) {
+        if (VECTORIZED && to - from >= VectorScanner.MIN_LENGTH) {
+            return VectorScanner.lastIndexOf(chars, from, to, c);
+        }
+        for (var i = to - 1; i >= from; i--) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Separate class so the Vector API is only linked if the module is available.
+     */
+    private static final class VectorScanner {
+
+        private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+        private static final int MIN_LENGTH = SPECIES.length();
+
+        static int indexOf(final char[] chars, final int from, final int to, final char c) {
+            final var needle = (short) c;
+            final var bound = from + SPECIES.loopBound(to - from);
+            var i = from;
+            for (; i < bound; i += SPECIES.length()) {
+                final var mask = ShortVector.fromCharArray(SPECIES, chars, i).eq(needle);
+                if (mask.anyTrue()) {
+                    return i + mask.firstTrue();
+                }
+            }
+            for (; i < to; i++) {
+                if (chars[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        static int lastIndexOf(final char[] chars, final int from, final int to, final char c) {
+            final var needle = (short) c;
+            final var bound = to - SPECIES.loopBound(to - from);
+            var i = to;
+            for (; i > bound; i -= SPECIES.length()) {
+                final var mask =
+                        ShortVector.fromCharArray(SPECIES, chars, i - SPECIES.length()).eq(needle);
+                if (mask.anyTrue()) {
+                    return i - SPECIES.length() + mask.lastTrue();
+                }
+            }
+            for (i--; i >= from; i--) {
+                if (chars[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the background threads used by fzf4j as virtual threads. Background work like loading
+ * previews, rendering and preparing indexes mostly waits, so it doesn't need platform threads.
+ */
+public final class Threads {
+
+    private Threads() {
+    }
+
+    /**
+     * Creates an unstarted virtual thread.
+     *
+     * @param name Name of the thread
+     * @param task Task to run
+     * @return Unstarted thread
+     */
+    public static Thread newThread(final String name, final Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    /**
+     * Creates an unstarted daemon platform thread with minimal priority for CPU bound work that
+     * must not slow down matching. Virtual threads ignore priorities, so this work would compete
+     * with the matcher for the carrier threads.
+     *
+     * @param name Name of the thread
+     * @param task Task to run
+     * @return Unstarted thread
+     */
+    public static Thread newLowPriorityThread(final String name, final Runnable task) {
+        return Thread.ofPlatform().name(name).daemon().priority(Thread.MIN_PRIORITY)
+                .unstarted(task);
+    }
+
+    /**
+     * Creates a factory for virtual threads.
+     *
+     * @param name Name of the created threads
+     * @return Thread factory
+     */
+    public static ThreadFactory factory(final String name) {
+        return Thread.ofVirtual().name(name).factory();
+    }
+
+    /**
+     * Creates an executor running tasks in virtual threads.
+     *
+     * @param name    Name of the threads
+     * @param threads Maximum number of concurrently running tasks
+     * @return Executor
+     */
+    public static ExecutorService newExecutor(final String name, final int threads) {
+        return Executors.newFixedThreadPool(threads, factory(name));
+    }
+}
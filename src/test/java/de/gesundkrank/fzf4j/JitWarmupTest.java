@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.matchers.Matcher;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+class JitWarmupTest {
+
+    private static final List<String> ITEMS = IntStream.range(0, 30_000)
+            .mapToObj(i -> "src/main/Item" + i + ".java")
+            .collect(Collectors.toList());
+
+    @Test
+    void queries() {
+        final var items = new FuzzyMatcherV1<>(ITEMS, OrderBy.SCORE, false, false).match("");
+        final var sample = JitWarmup.sample(items);
+        assertThat(sample.size(), is(JitWarmup.SAMPLE_SIZE));
+        assertThat(sample.get(1), is("src/main/Item3.java"));
+
+        // Queries are typed character by character and match sampled items
+        final var queries = JitWarmup.queries(sample, 50);
+        assertThat(queries.size(), is(50));
+        assertThat(queries.get(0).length(), is(1));
+        final var matcher = new FuzzyMatcherV1<>(MatchIndex.build(sample, false, false),
+                                                 OrderBy.SCORE);
+        final var counts = queries.stream().map(matcher::count).collect(Collectors.toList());
+        assertThat(counts, everyItem(greaterThan(0)));
+    }
+
+    @Test
+    void run() {
+        final var samples = new ArrayList<List<String>>();
+        final var matches = new AtomicInteger();
+        final List<Result<String>> items =
+                new FuzzyMatcherV1<>(ITEMS.subList(0, 100), OrderBy.SCORE, false, false)
+                        .match("");
+
+        new JitWarmup(items, sample -> {
+            samples.add(sample);
+            return counting(sample, matches);
+        }).run();
+
+        assertThat(samples.size(), is(1));
+        assertThat(samples.get(0), is(ITEMS.subList(0, 100)));
+        assertThat(matches.get(), is(JitWarmup.QUERY_COUNT + 1));
+    }
+
+    @Test
+    void cancel() throws InterruptedException {
+        final var items = new FuzzyMatcherV1<>(ITEMS, OrderBy.SCORE, false, false).match("");
+        final var matches = new AtomicInteger();
+        final var thread = new AtomicReference<Thread>();
+        final var warmup = new JitWarmup(items, sample -> {
+            thread.set(Thread.currentThread());
+            return counting(sample, matches);
+        }).start();
+
+        warmup.cancel(true);
+        assertThrows(CancellationException.class, warmup::get);
+        if (thread.get() != null) {
+            // The interrupted warmup stops before its next query
+            thread.get().join(Duration.ofSeconds(10).toMillis());
+            assertThat(thread.get().isAlive(), is(false));
+        }
+        assertThat(matches.get() <= JitWarmup.QUERY_COUNT, is(true));
+    }
+
+    private static Matcher<String> counting(
+            final List<String> sample,
+            final AtomicInteger matches
+    ) {
+        final var matcher = new FuzzyMatcherV1<>(MatchIndex.build(sample, false, false),
+                                                 OrderBy.SCORE);
+        return new Matcher<>() {
+            @Override
+            public List<Result<String>> match(final String pattern) {
+                matches.incrementAndGet();
+                return matcher.match(pattern);
+            }
+
+            @Override
+            public int size() {
+                return matcher.size();
+            }
+
+            @Override
+            public String getItem(final int itemIndex) {
+                return matcher.getItem(itemIndex);
+            }
+        };
+    }
+}
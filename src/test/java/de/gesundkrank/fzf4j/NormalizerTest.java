@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+class NormalizerTest {
+
+    @Test
+    void removeDiacriticalMarks() {
+        assertThat(Normalizer.normalize("Só Danço Samba"), is("So Danco Samba"));
+        assertThat(Normalizer.normalize("x᷀y⃗"), is("xy"));
+        assertThat(Normalizer.normalize("ﬁle"), is("file"));
+    }
+
+    @Test
+    void keepMarksOfOtherScripts() {
+        // Devanagari anusvara, Hebrew qamats and Thai sara i are non-spacing marks as well
+        for (final var text : new String[]{"हिंदी", "שָל", "สิ"}) {
+            assertThat(Normalizer.normalize(text), is(text));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PreviewLoaderTest {
+
+    @Test
+    void loadInBackgroundAndCache() throws InterruptedException {
+        final var loads = new AtomicInteger();
+        final var loaded = new Semaphore(0);
+
+        try (var previewLoader = new PreviewLoader(item -> {
+            loads.incrementAndGet();
+            return List.of("preview of " + item);
+        }, loaded::release)) {
+            assertThat(previewLoader.get("foo"), is(nullValue()));
+            loaded.acquire();
+
+            assertThat(previewLoader.get("foo"), contains("preview of foo"));
+            assertThat(previewLoader.get("foo"), contains("preview of foo"));
+            assertThat(loads.get(), is(1));
+        }
+    }
+
+    @Test
+    void cancelStaleRequests() throws InterruptedException {
+        final var started = new CountDownLatch(1);
+        final var interrupted = new CountDownLatch(1);
+
+        try (var previewLoader = new PreviewLoader(item -> {
+            if (item.equals("slow")) {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            return List.of(item);
+        }, () -> { })) {
+            previewLoader.get("slow");
+            started.await();
+            previewLoader.prefetch("fast", List.of());
+
+            assertThat(interrupted.await(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.googlecode.lanterna.TerminalPosition;
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.models.TerminalColors;
+import de.gesundkrank.fzf4j.models.TerminalState;
+import de.gesundkrank.fzf4j.renderers.HeadlessRenderer;
+
+class ViewTest {
+
+    private static final List<String> ITEMS = List.of("foo", "bar", "foobar");
+
+    @Test
+    void render() throws IOException {
+        final var renderer = new HeadlessRenderer(20, 6);
+        final var matcher = new FuzzyMatcherV1<>(ITEMS, OrderBy.SCORE, false, false);
+        final var state = new TerminalState<>(matcher.match("fo"));
+        state.setQuery("fo");
+        state.setCursorPosition(2);
+        state.setCursorItem(1);
+
+        try (final var view = new View(
+                renderer, ITEMS.size(), false, TerminalColors.DEFAULT_COLORS, null, null)) {
+            view.render(state);
+        }
+
+        assertThat(renderer.getLines(), contains("  foo", "> foobar", "", "", "  2/3", "> fo"));
+        assertThat(renderer.getCursorPosition(), is(new TerminalPosition(4, 5)));
+        assertThat(renderer.getCharacter(2, 1).getForegroundColor(),
+                   is(TerminalColors.DEFAULT_MATCHED_CHARS_COLOR));
+        assertThat(renderer.getFrameCount(), is(1));
+    }
+
+    @Test
+    void renderScanProgress() throws IOException {
+        final var renderer = new HeadlessRenderer(30, 4);
+        final var state = new TerminalState<>(
+                new FuzzyMatcherV1<>(ITEMS, OrderBy.SCORE, false, false).match("bar"));
+        state.setScanProgress(0.375);
+
+        try (final var view = new View(
+                renderer, 5000, true, TerminalColors.DEFAULT_COLORS, null, null)) {
+            view.render(state);
+        }
+
+        assertThat(renderer.getLines(), contains("  foobar", "> bar", "  2/5000 (37%)", ">"));
+    }
+
+    @Test
+    void renderInputOrder() throws IOException {
+        final var items = IntStream.range(0, 20_000)
+                .mapToObj(i -> "item" + i)
+                .collect(Collectors.toList());
+        final var matcher = new FuzzyMatcherV1<>(items, OrderBy.INDEX, false, false);
+        final var results = (ResumableResults<String>) matcher.matchLazily("i9", null);
+        final var state = new TerminalState<>(matcher.match(""));
+        final var renderer = new HeadlessRenderer(20, 6);
+
+        try (final var view = new View(
+                renderer, items.size(), false, TerminalColors.DEFAULT_COLORS, null, null)) {
+            state.setPageSize(view.pageSize());
+            // The scan of the new query starts at the reset cursor, not the previous one
+            state.setCursorItem(15_000);
+            state.setResults(results);
+            state.loadAhead();
+            state.setQuery("i9");
+            state.setCursorPosition(2);
+            results.getTotalCount().join();
+            view.render(state);
+        }
+
+        // A page beyond the cursor is matched, the total is counted in the background
+        assertThat(results.isComplete(), is(false));
+        assertThat(renderer.getLines(), contains(
+                "> item9", "  item19", "  item29", "  item39", "  6878/20000", "> i9"));
+    }
+}
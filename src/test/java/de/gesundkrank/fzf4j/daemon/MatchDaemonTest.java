@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+class MatchDaemonTest {
+
+    private static final List<String> ITEMS =
+            List.of("src/main/java", "src/test/java", "build.gradle", "README.adoc");
+
+    @Test
+    void protocolRoundTrip() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = Channels.newChannel(bytes);
+        final var frame = new Protocol.Frame().putByte(Protocol.FILTER).putString("ä".repeat(300))
+                .putInts(new int[]{1, 2, 3}).putInts(null).putString(null).putLong(-1L);
+        frame.write(out);
+        new Protocol.Frame().putInt(42).write(out);
+
+        final var in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+        final var payload = Protocol.read(in);
+        assertThat(payload.get(), is(Protocol.FILTER));
+        assertThat(Protocol.getString(payload), is("ä".repeat(300)));
+        assertThat(Protocol.getInts(payload), is(new int[]{1, 2, 3}));
+        assertThat(Protocol.getInts(payload), is(nullValue()));
+        assertThat(Protocol.getString(payload), is(nullValue()));
+        assertThat(payload.getLong(), is(-1L));
+        assertThat(payload.hasRemaining(), is(false));
+
+        assertThat(Protocol.read(in).getInt(), is(42));
+        assertThat(Protocol.read(in), is(nullValue()));
+    }
+
+    @Test
+    void filter(@TempDir final Path directory) throws IOException {
+        assumeTrue(Runtime.version().feature() >= 16, "Unix domain sockets require Java 16");
+        final var socket = directory.resolve("fzf4j.sock");
+        final var index = MatchIndex.build(ITEMS, false, false);
+
+        try (final var daemon = new MatchDaemon(socket).add("files", index);
+             final var matcher = new RemoteMatcher(socket, "files", 10)) {
+            daemon.start();
+
+            final var expected = new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("sj");
+            final var results = matcher.match("sj");
+            assertThat(texts(results), is(texts(expected)));
+            assertThat(results.get(0).getPositions(), is(expected.get(0).getPositions()));
+            assertThat(results.get(0).getScore(), is(expected.get(0).getScore()));
+
+            assertThat(texts(matcher.filter("", 2)), contains("src/main/java", "src/test/java"));
+            assertThat(matcher.size(), is(4));
+            assertThat(matcher.getItem(2), is("build.gradle"));
+            assertThat(matcher.count("sj"), is(expected.size()));
+            assertThat(matcher.match("sj"), is(not(instanceOf(ResumableResults.class))));
+
+            // Truncated results are counted in the background
+            try (final var top = new RemoteMatcher(socket, "files", 1)) {
+                final var topResults = top.match("sj");
+                assertThat(topResults.size(), is(1));
+                assertThat(((ResumableResults<?>) topResults).getTotalCount().join(),
+                           is(expected.size()));
+            }
+
+            final var unknown = new RemoteMatcher(socket, "unknown", 10);
+            assertThrows(UncheckedIOException.class, unknown::size);
+            unknown.close();
+        }
+    }
+
+    @Test
+    void malformedRequest(@TempDir final Path directory) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = Channels.newChannel(bytes);
+        new Protocol.Frame().putByte(Protocol.COUNT).putInt(-2).write(out);
+        new Protocol.Frame().putByte(Protocol.COUNT).putString("files").putInt(1 << 20).write(out);
+        new Protocol.Frame().putByte(Protocol.SIZE).putString("files").write(out);
+
+        final var index = MatchIndex.build(ITEMS, false, false);
+        final var responses = new ByteArrayOutputStream();
+        try (final var daemon = new MatchDaemon(directory.resolve("fzf4j.sock"))) {
+            daemon.add("files", index).serve(
+                    Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+                    Channels.newChannel(responses));
+        }
+
+        final var in = Channels.newChannel(new ByteArrayInputStream(responses.toByteArray()));
+        for (var i = 0; i < 2; i++) {
+            final var response = Protocol.read(in);
+            assertThat(response.get(), is(Protocol.ERROR));
+            assertThat(Protocol.getString(response), is("Malformed request"));
+        }
+        final var response = Protocol.read(in);
+        assertThat(response.get(), is(Protocol.OK));
+        assertThat(response.getInt(), is(ITEMS.size()));
+    }
+
+    @Test
+    void preparationFailure(@TempDir final Path directory) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = Channels.newChannel(bytes);
+        new Protocol.Frame().putByte(Protocol.COUNT).putString("files").putString("sj").write(out);
+        new Protocol.Frame().putByte(Protocol.FILTER).putString("files").putString("sj").putInt(10)
+                .write(out);
+
+        final MatchIndex<String> index = MatchIndex.build(ITEMS, item -> {
+            throw new IllegalStateException("Broken item " + item);
+        }, false, false);
+        final var responses = new ByteArrayOutputStream();
+        try (final var daemon = new MatchDaemon(directory.resolve("fzf4j.sock"))) {
+            daemon.add("files", index).serve(
+                    Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+                    Channels.newChannel(responses));
+        }
+
+        final var in = Channels.newChannel(new ByteArrayInputStream(responses.toByteArray()));
+        for (var i = 0; i < 2; i++) {
+            final var response = Protocol.read(in);
+            assertThat(response.get(), is(Protocol.ERROR));
+            assertThat(Protocol.getString(response),
+                       containsString("Broken item src/main/java"));
+        }
+    }
+
+    private static List<String> texts(final List<? extends Result<?>> results) {
+        return results.stream().map(Result::getText).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.daemon;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.matchers.MatchIndex;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+class ShardedMatcherTest {
+
+    private static final String[] WORDS = {"src", "main", "java", "test", "fuzzy", "matcher"};
+
+    @Test
+    void match(@TempDir final Path directory) throws IOException {
+        final var random = new Random(42);
+        final var lines = IntStream.range(0, 5000)
+                .mapToObj(i -> WORDS[random.nextInt(WORDS.length)] + "/"
+                               + WORDS[random.nextInt(WORDS.length)] + i)
+                .collect(Collectors.toList());
+        final var source = Files.write(directory.resolve("items.txt"), lines);
+        final var single = new FuzzyMatcherV1<>(MatchIndex.build(lines, false, false),
+                                                OrderBy.SCORE);
+
+        try (final var matcher = ShardedMatcher.open(
+                source, directory.resolve("shards"), 3, 20, List.of("-Xmx64m"))) {
+            assertThat(matcher.size(), is(lines.size()));
+            assertThat(matcher.getItem(0), is(lines.get(0)));
+            assertThat(matcher.getItem(4999), is(lines.get(4999)));
+
+            // The merged results equal the best results of a single index
+            for (final var pattern : List.of("srcm", "mjava1", "tst99", "xyz")) {
+                final var expected = single.match(pattern);
+                final var results = matcher.match(pattern);
+                assertThat(describe(results),
+                           is(describe(expected.subList(0, Math.min(20, expected.size())))));
+                assertThat(matcher.count(pattern), is(expected.size()));
+            }
+
+            final var truncated = matcher.match("srcm");
+            assertThat(truncated, is(instanceOf(ResumableResults.class)));
+            assertThat(((ResumableResults<?>) truncated).getTotalCount().join(),
+                       is(single.match("srcm").size()));
+
+            final var all = matcher.match("");
+            assertThat(describe(all), is(describe(single.match("").subList(0, 20))));
+            assertThat(((ResumableResults<?>) all).getTotalCount().join(), is(lines.size()));
+        }
+
+        // Shards of an unchanged source are reused with their snapshots
+        final var shards = ShardedMatcher.split(source, directory.resolve("shards"), 3);
+        assertThat(shards.stream().allMatch(Files::exists), is(true));
+        assertThat(Files.exists(directory.resolve("shards").resolve(
+                shards.get(0).getFileName().toString().replace(".txt", ".idx"))), is(true));
+        final var splitLines = shards.stream()
+                .flatMap(ShardedMatcherTest::readLines)
+                .collect(Collectors.toList());
+        assertThat(splitLines, is(lines));
+    }
+
+    @Test
+    void splitMultiByteLines(@TempDir final Path directory) throws IOException {
+        final var source = directory.resolve("lines.txt");
+        final var lines = IntStream.range(0, 1000)
+                .mapToObj(i -> "ü".repeat(20) + "€" + i)
+                .collect(Collectors.toList());
+        Files.write(source, lines);
+
+        // Shards are measured in bytes like the source, so they all get about the same share
+        final var shards = ShardedMatcher.split(source, directory.resolve("shards"), 4);
+        for (final var shard : shards) {
+            assertThat(readLines(shard).count(), is(both(greaterThan(240L)).and(lessThan(260L))));
+        }
+    }
+
+    @Test
+    void splitKeepsShardsOfOtherSources(@TempDir final Path directory) throws IOException {
+        final var shardDirectory = directory.resolve("shards");
+        final var first = Files.write(directory.resolve("first.txt"), List.of("a", "b", "c"));
+        final var second = Files.write(directory.resolve("second.txt"), List.of("d", "e", "f"));
+        final var firstShards = ShardedMatcher.split(first, shardDirectory, 2);
+        final var secondShards = ShardedMatcher.split(second, shardDirectory, 2);
+
+        // Changing a source replaces only its own shards
+        Files.write(first, List.of("a", "b", "c", "d"));
+        Files.setLastModifiedTime(first, FileTime.fromMillis(0));
+        final var changedShards = ShardedMatcher.split(first, shardDirectory, 2);
+        assertThat(changedShards, is(not(firstShards)));
+        assertThat(firstShards.stream().anyMatch(Files::exists), is(false));
+        assertThat(secondShards.stream().allMatch(Files::exists), is(true));
+        assertThat(ShardedMatcher.split(second, shardDirectory, 2), is(secondShards));
+        assertThat(changedShards.stream().flatMap(ShardedMatcherTest::readLines)
+                           .collect(Collectors.toList()), is(List.of("a", "b", "c", "d")));
+    }
+
+    private static List<String> describe(final List<? extends Result<?>> results) {
+        return results.stream()
+                .map(result -> result.getItemIndex() + ":" + result.getText() + ":"
+                               + result.getScore())
+                .collect(Collectors.toList());
+    }
+
+    private static Stream<String> readLines(final Path file) {
+        try {
+            return Files.readAllLines(file).stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
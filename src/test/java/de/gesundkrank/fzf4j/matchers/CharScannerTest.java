@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs against the scalar and, as part of the Java 21 tests, the vectorized implementation.
+ */
+class CharScannerTest {
+
+    @Test
+    void scanLikeScalarLoop() {
+        final var random = new Random(42);
+
+        for (var run = 0; run < 1000; run++) {
+            final var chars = new char[random.nextInt(200)];
+            for (var i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('a' + random.nextInt(26));
+            }
+            final var from = chars.length == 0 ? 0 : random.nextInt(chars.length);
+            final var to = from + random.nextInt(chars.length - from + 1);
+            final var c = (char) ('a' + random.nextInt(26));
+
+            assertThat(CharScanner.indexOf(chars, from, to, c), is(indexOf(chars, from, to, c)));
+            assertThat(CharScanner.lastIndexOf(chars, from, to, c),
+                       is(lastIndexOf(chars, from, to, c)));
+        }
+    }
+
+    private static int indexOf(final char[] chars, final int from, final int to, final char c) {
+        for (var i = from; i < to; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(final char[] chars, final int from, final int to, final char c) {
+        for (var i = to - 1; i >= from; i--) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
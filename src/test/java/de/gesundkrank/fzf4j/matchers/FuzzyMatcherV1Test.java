@@ -32,14 +32,33 @@ import static de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1.SCORE_GAP_START;
 import static de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1.SCORE_MATCH;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 
+import de.gesundkrank.fzf4j.models.FieldSelector;
 import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+import de.gesundkrank.fzf4j.utils.ResultComparator;
 
 /**
  * Tests copied from https://github.com/junegunn/fzf/blob/master/src/algo/algo_test.go
@@ -69,7 +88,7 @@ class FuzzyMatcherV1Test {
             final int expectedEndIndex,
             final int expectedScore
     ) {
-        final var matcher = new FuzzyMatcherV1(
+        final var matcher = new FuzzyMatcherV1<>(
                 Collections.singletonList(input), OrderBy.SCORE, normalize, caseSensitive);
         final var results = matcher.match(pattern);
         assertThat(results, is(not(empty())));
@@ -81,7 +100,7 @@ class FuzzyMatcherV1Test {
     }
 
     private void checkNoMatch(final String input, final String pattern) {
-        final var matcher = new FuzzyMatcherV1(
+        final var matcher = new FuzzyMatcherV1<>(
                 Collections.singletonList(input), OrderBy.SCORE, false, true);
         final var results = matcher.match(pattern);
         assertThat(results, is(empty()));
@@ -170,6 +189,276 @@ class FuzzyMatcherV1Test {
         checkMatch("Danço", "danco", true, false, 0, 5, 128);
     }
 
+    @Test
+    void matchNormalizedPositions() {
+        final var matcher = new FuzzyMatcherV1<>(
+                List.of("Danc\u0327o", "\ufb01le"), OrderBy.SCORE, true, false); // Danço, ﬁle
+        final var danco = matcher.match("danco");
+        assertThat(danco.get(0).getStart(), is(0));
+        assertThat(danco.get(0).getEnd(), is(6));
+        assertThat(danco.get(0).getPositions(), is(new int[]{0, 1, 2, 3, 5}));
+
+        final var file = matcher.match("file");
+        assertThat(file.get(0).getEnd(), is(3));
+        assertThat(file.get(0).getPositions(), is(new int[]{0, 0, 1, 2}));
+    }
+
+    @Test
+    void matchTypedItems() {
+        final var extracted = new AtomicInteger();
+        final var items = List.of(Path.of("src", "foo.txt"), Path.of("bar", "baz.txt"));
+        final Function<Path, String> fileName = path -> {
+            extracted.incrementAndGet();
+            return path.getFileName().toString();
+        };
+        final var matcher = new FuzzyMatcherV1<>(items, fileName, OrderBy.SCORE, false, false);
+
+        final var results = matcher.match("bz");
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0).getItem(), is(sameInstance(items.get(1))));
+        assertThat(results.get(0).getText(), is("baz.txt"));
+
+        matcher.match("txt");
+        matcher.match("");
+        assertThat(extracted.get(), is(items.size()));
+    }
+
+    @Test
+    void matchFields() {
+        final var items = List.of("1\tsrc/foo\tbob", "2\tlib/bar\tfoo");
+        final var index = MatchIndex.build(
+                items, Function.identity(), FieldSelector.parse("\t", "2"), false, false);
+        final var results = new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("foo");
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0).getItem(), is(items.get(0)));
+        assertThat(results.get(0).getStart(), is(6));
+        assertThat(results.get(0).getEnd(), is(9));
+        assertThat(results.get(0).getPositions(), is(new int[]{6, 7, 8}));
+    }
+
+    @Test
+    void matchTypos() {
+        final var index = MatchIndex.build(
+                List.of("ClassNotFound", "fzf4j", "FuzzyMatcher", "fuzzymatcher.java"), false,
+                false);
+        final var exact = new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("fuzymatcer");
+        assertThat(exact.size(), is(2));
+
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 2);
+        final var results = matcher.match("fuzzymatchre");
+        assertThat(results.size(), is(2));
+        assertThat(results.get(0).getText(), is("FuzzyMatcher"));
+        assertThat(results.get(0).getPositions().length, is(11));
+
+        final var ranked = matcher.match("fuzzymatcherj");
+        assertThat(ranked.get(0).getText(), is("fuzzymatcher.java"));
+        assertThat(ranked.get(1).getText(), is("FuzzyMatcher"));
+        assertThat(ranked.get(1).getScore() < ranked.get(0).getScore(), is(true));
+
+        // A typo per four characters only
+        assertThat(matcher.match("fzg").size(), is(0));
+        assertThat(matcher.match("fzf4k").size(), is(1));
+    }
+
+    @Test
+    void matchTyposPerPatternLength() {
+        final var index = MatchIndex.build(List.of("abcdefgh"), false, false);
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 3);
+
+        // maxTypos is capped at one typo per four pattern characters
+        assertThat(matcher.match("abx").size(), is(0));
+        assertThat(matcher.match("abcx").size(), is(1));
+        assertThat(matcher.match("abcxxfg").size(), is(0));
+        assertThat(matcher.match("abcdxxgh").size(), is(1));
+        assertThat(matcher.count("abcdxxgh"), is(1));
+
+        // ... and the cap never exceeds maxTypos
+        final var single = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 1);
+        assertThat(single.match("abcdxfgh").size(), is(1));
+        assertThat(single.match("abcdxxgh").size(), is(0));
+        assertThat(single.count("abcdxxgh"), is(0));
+    }
+
+    @Test
+    void matchLatencyBudget() {
+        final var index = MatchIndex.build(List.of("fxm_foo_mbar", "fuzzymatcher"), false, false);
+        final var greedy = new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("fm");
+        assertThat(greedy.get(0).getPositions(), is(new int[]{0, 2}));
+        assertThat(greedy.get(0).getScore(), is(45));
+
+        // The optimal alignment prefers the word boundaries
+        final var optimal = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 0, Duration.ofSeconds(1));
+        final var results = optimal.match("fm");
+        assertThat(results.get(0).getText(), is("fxm_foo_mbar"));
+        assertThat(results.get(0).getPositions(), is(new int[]{4, 8}));
+        assertThat(results.get(0).getStart(), is(4));
+        assertThat(results.get(0).getEnd(), is(9));
+        assertThat(results.get(0).getScore(), is(51));
+        assertThat(results.size(), is(2));
+
+        // Greedy scores are kept if the budget is exceeded by the scan
+        final var exceeded = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 0, Duration.ofNanos(1));
+        assertThat(exceeded.match("fm").get(0).getScore(), is(45));
+    }
+
+    @Test
+    void matchLatencyBudgetKeepsTiesInItemOrder() {
+        // Both items tie after realignment, but the greedy alignment ranks the first one lower
+        final var items = IntStream.range(0, 100)
+                .mapToObj(i -> i % 2 == 0 ? "mf_ff_mf" : "x__f__mm")
+                .collect(Collectors.toList());
+        final var index = MatchIndex.build(items, false, false);
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 0, Duration.ofSeconds(1));
+
+        final var results = matcher.match("fm");
+        assertThat(results.size(), is(items.size()));
+        final var sorted = new ArrayList<>(results);
+        sorted.sort(ResultComparator.INSTANCE);
+        assertThat(results, is(sorted));
+    }
+
+    @Test
+    void matchLatencyBudgetNeverLowersScores() {
+        // fzf's V2 algorithm isn't always optimal, so its alignment may score below the greedy one
+        final var random = new Random(42);
+        final var alphabet = "abcxAB _.?";
+        final var items = new ArrayList<>(List.of("AB BbbA.c.?Bb Bc? "));
+        for (var i = 0; i < 3000; i++) {
+            final var item = new StringBuilder();
+            for (var length = 1 + random.nextInt(20); length > 0; length--) {
+                item.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            items.add(item.toString());
+        }
+        final var index = MatchIndex.build(items, false, false);
+        final var greedy = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+        final var optimal = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 0, Duration.ofSeconds(10));
+
+        for (final var pattern : List.of("abc", "xbx", "abb_aa", "baxc", "a.c")) {
+            final var greedyScores = new HashMap<Integer, Integer>();
+            for (final var result : greedy.match(pattern)) {
+                greedyScores.put(result.getItemIndex(), result.getScore());
+            }
+            final var results = optimal.match(pattern);
+            assertThat(results.size(), is(greedyScores.size()));
+            for (final var result : results) {
+                assertThat(result.getScore(),
+                           is(greaterThanOrEqualTo(greedyScores.get(result.getItemIndex()))));
+            }
+        }
+        assertThat(optimal.match("abc").stream()
+                           .filter(result -> result.getItemIndex() == 0)
+                           .findFirst().orElseThrow().getScore(), is(72));
+    }
+
+    @Test
+    void matchProgress() {
+        final var items = IntStream.range(0, 100_000)
+                .mapToObj(i -> "item" + i)
+                .collect(Collectors.toList());
+        final var matcher = new FuzzyMatcherV1<>(MatchIndex.build(items, false, false),
+                                                 OrderBy.SCORE);
+        final var snapshots = new ArrayList<List<Result<String>>>();
+        final ProgressListener<String> listener = (snapshot, scannedItems, totalItems) -> {
+            assertThat(scannedItems < totalItems, is(true));
+            snapshots.add(snapshot);
+        };
+
+        final var results = matcher.match("i99", listener);
+        assertThat(itemIndices(results), is(itemIndices(matcher.match("i99"))));
+        for (final var snapshot : snapshots) {
+            final var sorted = new ArrayList<>(snapshot);
+            sorted.sort(ResultComparator.INSTANCE);
+            assertThat(snapshot, is(sorted));
+        }
+    }
+
+    @Test
+    void matchCancelled() {
+        final var matcher = new FuzzyMatcherV1<>(List.of("foo"), OrderBy.SCORE, false, false);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> matcher.match("f", null));
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(matcher.match("f").size(), is(1));
+    }
+
+    @Test
+    void matchInputOrder() {
+        final var items = IntStream.range(0, 20_000)
+                .mapToObj(i -> "item" + i)
+                .collect(Collectors.toList());
+        final var matcher = new FuzzyMatcherV1<>(MatchIndex.build(items, false, false),
+                                                 OrderBy.INDEX);
+        final var results = (ResumableResults<String>) matcher.matchLazily("i9", null);
+        assertThat(results, is(empty()));
+
+        // Only the first chunk is needed for the first results
+        results.resume(3);
+        assertThat(itemIndices(results.subList(0, 3)), is(List.of(9, 19, 29)));
+        assertThat(results.isComplete(), is(false));
+
+        final var expected = IntStream.range(0, items.size())
+                .filter(i -> items.get(i).contains("9"))
+                .boxed()
+                .collect(Collectors.toList());
+        assertThat(results.getTotalCount().join(), is(expected.size()));
+
+        results.resume(Integer.MAX_VALUE);
+        assertThat(results.isComplete(), is(true));
+        assertThat(itemIndices(results), is(expected));
+
+        // Without opting in, all results are matched right away
+        final var complete = matcher.match("i9");
+        assertThat(complete, is(not(instanceOf(ResumableResults.class))));
+        assertThat(itemIndices(complete), is(expected));
+    }
+
+    @Test
+    void matchAll() {
+        final var items = IntStream.range(0, 10_000)
+                .mapToObj(i -> (i % 3 == 0 ? "src/main/" : "test/") + "item" + i)
+                .collect(Collectors.toList());
+        final var index = MatchIndex.build(items, false, false);
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, 1);
+        final var patterns = List.of("smi99", "", "tst9", "xyz", "item1234");
+
+        // The batch returns the best results of matching each pattern on its own
+        final var results = matcher.matchAll(patterns, 5);
+        assertThat(results.size(), is(patterns.size()));
+        for (var i = 0; i < patterns.size(); i++) {
+            final var expected = matcher.match(patterns.get(i));
+            assertThat(itemIndices(results.get(i)),
+                       is(itemIndices(expected.subList(0, Math.min(5, expected.size())))));
+        }
+        assertThat(results.get(3), is(empty()));
+
+        final var inputOrder = new FuzzyMatcherV1<>(index, OrderBy.INDEX).matchAll(patterns, 3);
+        assertThat(itemIndices(inputOrder.get(0)), is(List.of(99, 399, 699)));
+    }
+
+    @Test
+    void count() {
+        final var items = IntStream.range(0, 10_000)
+                .mapToObj(i -> (i % 3 == 0 ? "src/main/" : "test/") + "item" + i)
+                .collect(Collectors.toList());
+        final var index = MatchIndex.build(items, false, false);
+
+        // Counting skips ranking but finds the same matches
+        for (final var typos : new int[]{0, 1}) {
+            final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE, typos);
+            for (final var pattern : List.of("smi99", "", "tst9", "xyz", "item1234")) {
+                assertThat(matcher.count(pattern), is(matcher.match(pattern).size()));
+            }
+        }
+    }
+
+    private static List<Integer> itemIndices(final List<? extends Result<?>> results) {
+        return results.stream().map(Result::getItemIndex).collect(Collectors.toList());
+    }
+
     @Test
     void noMatch() {
         checkNoMatch("fooBarbaz", "oBZ");
@@ -181,4 +470,21 @@ class FuzzyMatcherV1Test {
     void emptyPattern() {
         checkMatch("foobar", "", false, false, 0, 0, 0);
     }
+
+    @Test
+    void emptyPatternExtractsKeysOnAccess() {
+        final var extracted = new AtomicInteger();
+        final Function<Integer, String> key = i -> {
+            extracted.incrementAndGet();
+            return "item" + i;
+        };
+        final var items = IntStream.range(0, 1_000_000).boxed().collect(Collectors.toList());
+        final var results = new FuzzyMatcherV1<>(items, key, OrderBy.SCORE, false, false).match("");
+
+        assertThat(results.size(), is(items.size()));
+        assertThat(extracted.get(), is(0));
+        assertThat(results.get(123_456).getText(), is("item123456"));
+        assertThat(results.get(123_456).getItemIndex(), is(123_456));
+        assertThat(extracted.get(), is(1));
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+class LiveIndexTest {
+
+    private static List<String> texts(final List<? extends Result<?>> results) {
+        return results.stream().map(Result::getText).collect(Collectors.toList());
+    }
+
+    @Test
+    void add() {
+        final var items = IntStream.range(0, MatchIndex.CHUNK_SIZE + 10)
+                .mapToObj(i -> "item" + i)
+                .collect(Collectors.toList());
+        final var index = LiveIndex.build(items, false, false);
+        final var matcher = new LiveMatcher<>(index, OrderBy.SCORE);
+        final var before = index.snapshot();
+        assertThat(texts(matcher.match("item4096")), contains("item4096"));
+
+        final var changes = new ArrayList<Boolean>();
+        matcher.addChangeListener(changes::add);
+        index.add("new item4096");
+
+        assertThat(changes, contains(false));
+        assertThat(matcher.size(), is(items.size() + 1));
+        assertThat(texts(matcher.match("item4096")), contains("item4096", "new item4096"));
+
+        // The full chunk is shared, the earlier snapshot doesn't see the new item
+        assertThat(index.snapshot().chunk(0), is(sameInstance(before.chunk(0))));
+        assertThat(new FuzzyMatcherV1<>(before, OrderBy.SCORE).match("new").size(), is(0));
+    }
+
+    @Test
+    void remove() {
+        final var index = LiveIndex.build(List.of("foo", "bar", "foobar", "baz", "qux"), false,
+                                          false);
+        final var matcher = new LiveMatcher<>(index, OrderBy.SCORE);
+        final var before = index.snapshot();
+        final var changes = new ArrayList<Boolean>();
+        matcher.addChangeListener(changes::add);
+
+        assertThat(index.remove("foo"), is(true));
+        assertThat(index.remove("foo"), is(false));
+
+        // Tombstoned items keep their index but don't match
+        assertThat(changes, contains(false));
+        assertThat(texts(matcher.match("fo")), contains("foobar"));
+        assertThat(texts(matcher.match("")), contains("bar", "foobar", "baz", "qux"));
+        assertThat(matcher.match("").get(0).getItemIndex(), is(1));
+        assertThat(matcher.matchAll(List.of("fo", "x"), 10).get(0).size(), is(1));
+        assertThat(matcher.size(), is(4));
+        assertThat(matcher.count("fo"), is(1));
+        assertThat(matcher.count(""), is(4));
+        assertThat(new FuzzyMatcherV1<>(before, OrderBy.SCORE).match("fo").size(), is(2));
+
+        // Removing more than a quarter of the items compacts the index
+        index.removeAll(List.of("bar"));
+        assertThat(changes, contains(false, true));
+        assertThat(index.snapshot().size(), is(3));
+        assertThat(index.snapshot().hasDeleted(), is(false));
+        assertThat(texts(matcher.match("")), contains("foobar", "baz", "qux"));
+        assertThat(matcher.getItem(0), is("foobar"));
+
+        index.removeAll(List.of("foobar", "baz", "qux"));
+        assertThat(matcher.match(""), is(empty()));
+        assertThat(matcher.size(), is(0));
+    }
+}
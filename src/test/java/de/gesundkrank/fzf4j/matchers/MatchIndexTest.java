@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.gesundkrank.fzf4j.models.FieldSelector;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+class MatchIndexTest {
+
+    private static final List<String> ITEMS = IntStream.range(0, 10_000)
+            .mapToObj(i -> i % 3 == 0 ? "Só Danço Samba " + i : "/usr/lib/fooBar" + i)
+            .collect(Collectors.toList());
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> texts(final List<? extends Result<?>> results) {
+        return results.stream().map(Result::getText).collect(Collectors.toList());
+    }
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        final var snapshot = tempDir.resolve("items.idx");
+        final var index = MatchIndex.build(ITEMS, true, false);
+        index.save(snapshot, 42);
+
+        final var loaded = MatchIndex.load(snapshot);
+        assertThat(loaded.getFingerprint(), is(42L));
+        assertThat(loaded.isNormalize(), is(true));
+        assertThat(loaded.isCaseSensitive(), is(false));
+        assertThat(loaded.getItems(), is(ITEMS));
+        assertThat(loaded.getKeys().get(1), is(sameInstance(loaded.getKeys().get(1))));
+
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+        final var loadedMatcher = new FuzzyMatcherV1<>(loaded, OrderBy.SCORE);
+        for (final var pattern : List.of("sodc", "fb99", "usrlib1", "xyz")) {
+            assertThat(texts(loadedMatcher.match(pattern)), is(texts(matcher.match(pattern))));
+        }
+    }
+
+    @Test
+    void caseSensitiveSnapshotSkipsFoldedText() throws IOException {
+        final var insensitive = tempDir.resolve("insensitive.idx");
+        final var sensitive = tempDir.resolve("sensitive.idx");
+        MatchIndex.build(ITEMS, false, false).save(insensitive, 42);
+        final var index = MatchIndex.build(ITEMS, false, true);
+        index.save(sensitive, 42);
+
+        assertThat(Files.size(sensitive), is(lessThan(Files.size(insensitive))));
+        final var loaded = MatchIndex.load(sensitive);
+        assertThat(loaded.getItems(), is(ITEMS));
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+        final var loadedMatcher = new FuzzyMatcherV1<>(loaded, OrderBy.SCORE);
+        for (final var pattern : List.of("SDS", "fB99", "usrlib1")) {
+            assertThat(texts(loadedMatcher.match(pattern)), is(texts(matcher.match(pattern))));
+        }
+    }
+
+    @Test
+    void prepareInBackground() {
+        final var index = MatchIndex.build(ITEMS, true, false);
+        final var matcher = new FuzzyMatcherV1<>(index, OrderBy.SCORE);
+        final var preparation = index.prepareAsync();
+        final var results = matcher.match("sodc");
+        preparation.join();
+
+        assertThat(texts(matcher.match("sodc")), is(texts(results)));
+        assertThat(results.size(), is(ITEMS.size() / 3 + 1));
+    }
+
+    @Test
+    void deduplicate() {
+        final var items = List.of("foo", "bar", "foo", "baz", "bar", "foo");
+        final var index = MatchIndex.build(items, false, false).deduplicate();
+        assertThat(index.getItems(), contains("foo", "bar", "baz"));
+        assertThat(index.getOccurrenceCount(0), is(3));
+        assertThat(index.getOccurrences(1), is(new int[]{1, 4}));
+        assertThat(index.getSourceItems(), is(items));
+
+        final var results = new FuzzyMatcherV1<>(index, OrderBy.SCORE).match("ba");
+        assertThat(texts(results), contains("bar", "baz"));
+        assertThat(results.get(0).getItemIndex(), is(1));
+    }
+
+    @Test
+    void deduplicateLoadedSnapshot() throws IOException {
+        final var snapshot = tempDir.resolve("items.idx");
+        final var items = List.of("foo", "bar", "foo");
+        final var index = MatchIndex.build(items, false, false);
+        assertThrows(IllegalStateException.class, () -> index.deduplicate().save(snapshot, 42));
+        assertThat(Files.exists(snapshot), is(false));
+
+        // Occurrences are counted again when deduplicating the loaded index
+        index.save(snapshot, 42);
+        final var loaded = MatchIndex.load(snapshot).deduplicate();
+        assertThat(loaded.getItems(), contains("foo", "bar"));
+        assertThat(loaded.getOccurrenceCount(0), is(2));
+    }
+
+    @Test
+    void openRebuildsOutdatedSnapshot() throws IOException {
+        final var source = tempDir.resolve("items.txt");
+        final var snapshot = tempDir.resolve("items.idx");
+        Files.write(source, List.of("foo", "bar"));
+
+        final var index = MatchIndex.open(source, snapshot, false, false);
+        assertThat(index.getFingerprint(), is(MatchIndex.fingerprint(source)));
+        assertThat(MatchIndex.open(source, snapshot, false, false).getItems(),
+                   contains("foo", "bar"));
+
+        Files.write(source, List.of("foo", "bar", "baz"));
+        final var rebuilt = MatchIndex.open(source, snapshot, false, false);
+        assertThat(rebuilt.getFingerprint(), is(not(index.getFingerprint())));
+        assertThat(rebuilt.getItems(), contains("foo", "bar", "baz"));
+
+        final var fields = FieldSelector.parse(":", "2..");
+        assertThat(MatchIndex.open(source, snapshot, fields, false, false).getFields(),
+                   is(fields));
+        assertThat(MatchIndex.load(snapshot).getFields(), is(fields));
+    }
+
+    @Test
+    void openRebuildsTruncatedSnapshot() throws IOException {
+        final var source = tempDir.resolve("items.txt");
+        final var snapshot = tempDir.resolve("items.idx");
+        Files.write(source, ITEMS);
+        MatchIndex.open(source, snapshot, false, false);
+
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertThat(MatchIndex.open(source, snapshot, false, false).getItems(), is(ITEMS));
+        assertThat(MatchIndex.load(snapshot).getItems(), is(ITEMS));
+        assertThat(Files.exists(tempDir.resolve("items.idx.tmp")), is(false));
+    }
+}
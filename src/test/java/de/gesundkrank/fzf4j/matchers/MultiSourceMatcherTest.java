@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+class MultiSourceMatcherTest {
+
+    private static final List<String> BRANCHES = List.of("main", "feature/matcher", "fix/merge");
+    private static final List<String> TAGS = IntStream.range(0, 10_000)
+            .mapToObj(i -> "v1." + i)
+            .collect(Collectors.toList());
+
+    private static Source<String> source(
+            final String name,
+            final List<String> items,
+            final int scoreOffset
+    ) {
+        final var index = MatchIndex.build(items, false, false);
+        return new Source<>(name, new FuzzyMatcherV1<>(index, OrderBy.SCORE), scoreOffset);
+    }
+
+    private static Source<String> source(
+            final String name,
+            final List<String> items,
+            final OrderBy orderBy,
+            final int maxTypos
+    ) {
+        final var index = MatchIndex.build(items, false, false);
+        return new Source<>(name, new FuzzyMatcherV1<>(index, orderBy, maxTypos));
+    }
+
+    private static List<String> describe(final List<? extends Result<?>> results) {
+        return results.stream()
+                .map(result -> result.getItemIndex() + ":" + result.getText())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void match() {
+        try (final var matcher = new MultiSourceMatcher<>(
+                List.of(source("branches", BRANCHES, 0), source("tags", TAGS, 0)),
+                OrderBy.SCORE)) {
+            final var all = Stream.concat(BRANCHES.stream(), TAGS.stream())
+                    .collect(Collectors.toList());
+            final var single = new FuzzyMatcherV1<>(all, OrderBy.SCORE, false, false);
+
+            // The merge ranks like a single index over the concatenated sources
+            for (final var pattern : List.of("m", "v1.99", "ma", "xyz")) {
+                assertThat(describe(matcher.match(pattern)), is(describe(single.match(pattern))));
+                assertThat(matcher.count(pattern), is(single.match(pattern).size()));
+            }
+            assertThat(describe(matcher.match("").subList(0, 5)),
+                       contains("0:main", "1:feature/matcher", "2:fix/merge", "3:v1.0", "4:v1.1"));
+            assertThat(matcher.size(), is(all.size()));
+            assertThat(matcher.getItem(3), is("v1.0"));
+            assertThat(matcher.getSource(2).getName(), is("branches"));
+            assertThat(matcher.getSource(3).getName(), is("tags"));
+        }
+    }
+
+    @Test
+    void scoreOffset() {
+        final var items = List.of("foo", "fxoxo");
+        try (final var matcher = new MultiSourceMatcher<>(
+                List.of(source("a", items, 0), source("b", items, 1000)), OrderBy.SCORE)) {
+            final var results = matcher.match("foo");
+            assertThat(describe(results), contains("2:foo", "3:fxoxo", "0:foo", "1:fxoxo"));
+            assertThat(results.get(0).getScore(),
+                       is(results.get(2).getScore() + 1000));
+        }
+    }
+
+    @Test
+    void matchWithTypos() {
+        final var fixes = List.of("fix/merge", "fix/merg");
+        final var features = List.of("xmxexrxgxex", "merger");
+        try (final var matcher = new MultiSourceMatcher<>(
+                List.of(source("fixes", fixes, OrderBy.SCORE, 1),
+                        source("features", features, OrderBy.SCORE, 1)),
+                OrderBy.SCORE)) {
+            final var all = Stream.concat(fixes.stream(), features.stream())
+                    .collect(Collectors.toList());
+            final var single = new FuzzyMatcherV1<>(
+                    MatchIndex.build(all, false, false), OrderBy.SCORE, 1);
+
+            // Approximate matches of a source are ranked after the exact matches of all sources
+            final var results = matcher.match("merge");
+            assertThat(describe(results), is(describe(single.match("merge"))));
+            assertThat(describe(results),
+                       contains("3:merger", "0:fix/merge", "2:xmxexrxgxex", "1:fix/merg"));
+        }
+    }
+
+    @Test
+    void matchInputOrderLazily() throws Exception {
+        try (final var matcher = new MultiSourceMatcher<>(
+                List.of(source("branches", BRANCHES, OrderBy.INDEX, 0),
+                        source("tags", TAGS, OrderBy.INDEX, 0)),
+                OrderBy.INDEX)) {
+            final var all = Stream.concat(BRANCHES.stream(), TAGS.stream())
+                    .collect(Collectors.toList());
+            final var expected = describe(
+                    new FuzzyMatcherV1<>(all, OrderBy.INDEX, false, false).match("1"));
+
+            assertThat(describe(matcher.match("1")), is(expected));
+
+            final var results = matcher.matchLazily("1", null);
+            assertThat(results, is(instanceOf(ResumableResults.class)));
+            final var resumable = (ResumableResults<String>) results;
+            resumable.resume(10);
+            assertThat(resumable.size() >= 10, is(true));
+            assertThat(resumable.getTotalCount().get(10, TimeUnit.SECONDS), is(expected.size()));
+            resumable.resume(Integer.MAX_VALUE);
+            assertThat(resumable.isComplete(), is(true));
+            assertThat(describe(resumable), is(expected));
+        }
+    }
+
+    @Test
+    void slowSource() throws Exception {
+        final var release = new CountDownLatch(1);
+        final var tags = source("tags", TAGS, 0).getMatcher();
+        final Matcher<String> slow = new Matcher<>() {
+            @Override
+            public List<Result<String>> match(final String pattern) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return tags.match(pattern);
+            }
+
+            @Override
+            public int size() {
+                return tags.size();
+            }
+
+            @Override
+            public String getItem(final int itemIndex) {
+                return tags.getItem(itemIndex);
+            }
+        };
+
+        final var branches = source("branches", BRANCHES, 0);
+        try (final var matcher = new MultiSourceMatcher<>(
+                List.of(branches, new Source<>("tags", slow)), OrderBy.SCORE)) {
+            final var snapshots = new ArrayList<List<String>>();
+            final var firstSnapshot = new CountDownLatch(1);
+            final ProgressListener<String> listener = (results, scanned, total) -> {
+                snapshots.add(describe(results));
+                firstSnapshot.countDown();
+            };
+            final var results = CompletableFuture.supplyAsync(() -> matcher.match("m", listener));
+
+            // The branches are published while the tags are still matched
+            assertThat(firstSnapshot.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(snapshots.get(0), is(describe(branches.getMatcher().match("m"))));
+            release.countDown();
+            assertThat(results.get(10, TimeUnit.SECONDS).size(), is(3));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PatternMasksTest {
+
+    private static String randomText(final Random random, final int length) {
+        final var chars = new char[length];
+        for (var i = 0; i < length; i++) {
+            chars[i] = "abcdé中".charAt(random.nextInt(6));
+        }
+        return new String(chars);
+    }
+
+    private static int longestCommonSubsequence(final String a, final String b) {
+        final var table = new int[a.length() + 1][b.length() + 1];
+        for (var i = 1; i <= a.length(); i++) {
+            for (var j = 1; j <= b.length(); j++) {
+                table[i][j] = a.charAt(i - 1) == b.charAt(j - 1)
+                              ? table[i - 1][j - 1] + 1
+                              : Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table[a.length()][b.length()];
+    }
+
+    private static int subsequenceEnd(final String pattern, final String text) {
+        var index = -1;
+        for (var i = 0; i < pattern.length(); i++) {
+            index = text.indexOf(pattern.charAt(i), index + 1);
+            if (index == -1) {
+                return -1;
+            }
+        }
+        return index + 1;
+    }
+
+    @Test
+    void subsequenceEnd() {
+        final var random = new Random(42);
+        for (var run = 0; run < 1000; run++) {
+            final var pattern = randomText(random, 1 + random.nextInt(8));
+            final var text = randomText(random, random.nextInt(40));
+            final var chars = text.toCharArray();
+            assertThat(new PatternMasks(pattern).subsequenceEnd(chars, 0, chars.length),
+                       is(subsequenceEnd(pattern, text)));
+        }
+    }
+
+    @Test
+    void longestCommonSubsequenceLikeDynamicProgramming() {
+        final var random = new Random(42);
+        for (var run = 0; run < 1000; run++) {
+            final var pattern = randomText(random, 1 + random.nextInt(PatternMasks.MAX_LENGTH));
+            final var text = randomText(random, random.nextInt(100));
+            final var chars = ("xx" + text).toCharArray();
+            final var masks = new PatternMasks(pattern);
+            final var expected = longestCommonSubsequence(pattern, text);
+
+            assertThat(masks.longestCommonSubsequence(chars, 2, chars.length), is(expected));
+
+            assertThat(masks.alignment(chars, 2, chars.length, expected + 1), is(nullValue()));
+            final var positions = masks.alignment(chars, 2, chars.length, expected);
+            assertThat(positions.length, is(expected));
+            final var subsequence = new StringBuilder();
+            for (var i = 0; i < positions.length; i++) {
+                if (i > 0) {
+                    assertThat(positions[i] > positions[i - 1], is(true));
+                }
+                subsequence.append(chars[positions[i]]);
+            }
+            assertThat(longestCommonSubsequence(pattern, subsequence.toString()), is(expected));
+        }
+    }
+}
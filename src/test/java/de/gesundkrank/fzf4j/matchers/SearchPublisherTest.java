@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+import de.gesundkrank.fzf4j.models.ResultPage;
+import de.gesundkrank.fzf4j.models.ResumableResults;
+
+class SearchPublisherTest {
+
+    private static final List<String> ITEMS = IntStream.range(0, 25)
+            .mapToObj(i -> "item" + i)
+            .collect(Collectors.toList());
+
+    @Test
+    void pages() throws InterruptedException {
+        final var matcher = new RecordingMatcher();
+        final var subscriber = new QueueSubscriber();
+        try (final var queries = new SubmissionPublisher<String>(Runnable::run, 16)) {
+            new SearchPublisher<>(matcher, queries, 10).subscribe(subscriber);
+
+            // Queries are only matched once pages are requested, a burst only the latest
+            queries.submit("i");
+            queries.submit("it");
+            queries.submit("item");
+            assertThat(subscriber.signals.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+            subscriber.subscription.request(2);
+
+            final var first = subscriber.page();
+            assertThat(first.getQuery(), is("item"));
+            assertThat(first.getOffset(), is(0));
+            assertThat(first.getResults().size(), is(10));
+            assertThat(first.getTotalResults(), is(25));
+            assertThat(first.isLast(), is(false));
+            assertThat(subscriber.page().getOffset(), is(10));
+            assertThat(matcher.queries, contains("item"));
+
+            // A newer query drops the remaining pages of the previous one
+            queries.submit("item2");
+            subscriber.subscription.request(1);
+            final var page = subscriber.page();
+            assertThat(page.getQuery(), is("item2"));
+            assertThat(page.getResults().size(), is(7));
+            assertThat(page.isLast(), is(true));
+            assertThat(matcher.queries, contains("item", "item2"));
+        }
+        assertThat(subscriber.signals.poll(5, TimeUnit.SECONDS), is("complete"));
+    }
+
+    @Test
+    void completeAfterLastPage() throws InterruptedException {
+        final var subscriber = new QueueSubscriber();
+        try (final var queries = new SubmissionPublisher<String>(Runnable::run, 16)) {
+            new SearchPublisher<>(new RecordingMatcher(), queries, 10).subscribe(subscriber);
+            queries.submit("item1");
+        }
+        assertThat(subscriber.signals.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        final var page = subscriber.page();
+        assertThat(page.getResults().size(), is(10));
+        assertThat(page.isLast(), is(false));
+        assertThat(subscriber.page().isLast(), is(true));
+        assertThat(subscriber.signals.poll(5, TimeUnit.SECONDS), is("complete"));
+    }
+
+    @Test
+    void invalidRequest() throws InterruptedException {
+        final var subscriber = new QueueSubscriber();
+        try (final var queries = new SubmissionPublisher<String>(Runnable::run, 16)) {
+            new SearchPublisher<>(new RecordingMatcher(), queries, 10).subscribe(subscriber);
+            subscriber.subscription.request(0);
+            assertThat(subscriber.signals.poll(5, TimeUnit.SECONDS),
+                       is(instanceOf(IllegalArgumentException.class)));
+        }
+    }
+
+    @Test
+    void newQueryWhileResuming() throws InterruptedException {
+        final var matcher = new BlockingMatcher();
+        final var subscriber = new QueueSubscriber();
+        try (final var queries = new SubmissionPublisher<String>(Runnable::run, 16)) {
+            new SearchPublisher<>(matcher, queries, 10).subscribe(subscriber);
+            subscriber.subscription.request(1);
+            queries.submit("item");
+            assertThat(matcher.resuming.await(5, TimeUnit.SECONDS), is(true));
+
+            // Results are resumed outside the lock, so a newer query doesn't wait for them
+            try {
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> queries.submit("item2"));
+            } finally {
+                matcher.resume.countDown();
+            }
+
+            final var page = subscriber.page();
+            assertThat(page.getQuery(), is("item2"));
+            assertThat(page.getResults().size(), is(7));
+        }
+    }
+
+    /**
+     * Matcher recording the matched queries.
+     */
+    private static final class RecordingMatcher implements Matcher<String> {
+
+        private final FuzzyMatcherV1<String> matcher =
+                new FuzzyMatcherV1<>(ITEMS, OrderBy.SCORE, false, false);
+        private final List<String> queries = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<Result<String>> match(final String pattern) {
+            queries.add(pattern);
+            return matcher.match(pattern);
+        }
+
+        @Override
+        public int size() {
+            return matcher.size();
+        }
+
+        @Override
+        public String getItem(final int itemIndex) {
+            return matcher.getItem(itemIndex);
+        }
+    }
+
+    /**
+     * Matcher returning results that block on resuming until they are released.
+     */
+    private static final class BlockingMatcher implements Matcher<String> {
+
+        private final RecordingMatcher matcher = new RecordingMatcher();
+        private final CountDownLatch resuming = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        @Override
+        public List<Result<String>> match(final String pattern) {
+            return new BlockingResults(matcher.match(pattern));
+        }
+
+        @Override
+        public int size() {
+            return matcher.size();
+        }
+
+        @Override
+        public String getItem(final int itemIndex) {
+            return matcher.getItem(itemIndex);
+        }
+
+        private final class BlockingResults extends AbstractList<Result<String>>
+                implements ResumableResults<String> {
+
+            private final List<Result<String>> results;
+
+            private BlockingResults(final List<Result<String>> results) {
+                this.results = results;
+            }
+
+            @Override
+            public void resume(final int count) {
+                resuming.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public boolean isComplete() {
+                return true;
+            }
+
+            @Override
+            public CompletableFuture<Integer> getTotalCount() {
+                return CompletableFuture.completedFuture(results.size());
+            }
+
+            @Override
+            public Result<String> get(final int index) {
+                return results.get(index);
+            }
+
+            @Override
+            public int size() {
+                return results.size();
+            }
+        }
+    }
+
+    /**
+     * Subscriber queueing all signals.
+     */
+    private static final class QueueSubscriber implements Flow.Subscriber<ResultPage<String>> {
+
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final ResultPage<String> page) {
+            signals.add(page);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            signals.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+        }
+
+        @SuppressWarnings("unchecked")
+        private ResultPage<String> page() throws InterruptedException {
+            return (ResultPage<String>) signals.poll(5, TimeUnit.SECONDS);
+        }
+    }
+}
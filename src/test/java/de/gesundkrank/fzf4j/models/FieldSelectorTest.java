@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.models;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class FieldSelectorTest {
+
+    private static final String LINE = "42\tsrc/main/Foo.java\tjan";
+
+    @Test
+    void delimiter() {
+        assertThat(FieldSelector.parse("\t", "2").ranges(LINE), is(new int[]{3, 21}));
+        assertThat(FieldSelector.parse("\t", "-1").ranges(LINE), is(new int[]{21, 24}));
+        assertThat(FieldSelector.parse("\t", "1,3").ranges(LINE), is(new int[]{0, 3, 21, 24}));
+        assertThat(FieldSelector.parse("\t", "2..").ranges(LINE), is(new int[]{3, 24}));
+        assertThat(FieldSelector.parse("\t", "..-2").ranges(LINE), is(new int[]{0, 21}));
+        assertThat(FieldSelector.parse("\t", "4").ranges(LINE), is(new int[0]));
+    }
+
+    @Test
+    void whitespace() {
+        final var fields = FieldSelector.parse(null, "2");
+        assertThat(fields.ranges("  foo   bar baz"), is(new int[]{8, 12}));
+        assertThat(FieldSelector.parse(null, "1").ranges("  foo   bar"), is(new int[]{0, 8}));
+        assertThat(FieldSelector.parse(null, "1").ranges(""), is(new int[0]));
+    }
+
+    @Test
+    void invalidExpression() {
+        assertThrows(IllegalArgumentException.class, () -> FieldSelector.parse(null, "0"));
+        assertThrows(IllegalArgumentException.class, () -> FieldSelector.parse(null, "a..b"));
+    }
+}
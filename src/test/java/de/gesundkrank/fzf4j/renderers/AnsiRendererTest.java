@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.renderers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.googlecode.lanterna.SGR;
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.TextCharacter;
+import com.googlecode.lanterna.TextColor;
+import com.googlecode.lanterna.terminal.virtual.DefaultVirtualTerminal;
+import org.junit.jupiter.api.Test;
+
+class AnsiRendererTest {
+
+    @Test
+    void refresh() throws IOException {
+        final var terminal = new DefaultVirtualTerminal(new TerminalSize(4, 2));
+        final var out = new ByteArrayOutputStream();
+        final var renderer = new AnsiRenderer(terminal, out);
+        renderer.start();
+
+        renderer.putString(0, 0, "aä");
+        final var bold = new TextCharacter(
+                '€', TextColor.ANSI.RED, TextColor.ANSI.DEFAULT, SGR.BOLD);
+        renderer.setCharacter(1, 1, bold);
+        renderer.setCharacter(4, 1, new TextCharacter('x'));
+        renderer.setCursorPosition(2, 1);
+        renderer.refresh();
+
+        final var plain = "\u001b[0;39;49m";
+        final var expected = "\u001b[1;1H" + plain + "aä  "
+                             + "\u001b[2;1H" + " \u001b[0;31;49;1m€" + plain + "  "
+                             + "\u001b[0m\u001b[2;3H";
+        assertThat(new String(renderer.getFrame(), StandardCharsets.UTF_8), is(expected));
+        assertThat(out.toString(StandardCharsets.UTF_8), is(expected));
+
+        // Frames are written in full, not as difference to the previous one
+        out.reset();
+        renderer.clear();
+        renderer.refresh();
+        assertThat(out.toString(StandardCharsets.UTF_8),
+                   is("\u001b[1;1H" + plain + "    \u001b[2;1H    \u001b[0m\u001b[2;3H"));
+        renderer.close();
+    }
+
+    @Test
+    void replaceControlCharacters() throws IOException {
+        final var terminal = new DefaultVirtualTerminal(new TerminalSize(5, 1));
+        final var renderer = new AnsiRenderer(terminal, new ByteArrayOutputStream());
+        renderer.start();
+
+        // Lanterna rejects most C0 control characters, but not tabs and C1 control characters
+        renderer.putString(0, 0, "a\tb\u009b\u0085");
+        renderer.refresh();
+
+        assertThat(new String(renderer.getFrame(), StandardCharsets.UTF_8),
+                   is("\u001b[1;1H\u001b[0;39;49ma?b??\u001b[0m\u001b[1;1H"));
+        renderer.close();
+    }
+
+    @Test
+    void resize() throws IOException {
+        final var terminal = new DefaultVirtualTerminal(new TerminalSize(4, 2));
+        final var renderer = new AnsiRenderer(terminal, new ByteArrayOutputStream());
+        renderer.start();
+        assertThat(renderer.resizeIfNecessary(), is(false));
+
+        terminal.setTerminalSize(new TerminalSize(8, 3));
+        assertThat(renderer.resizeIfNecessary(), is(true));
+        assertThat(renderer.getTerminalSize(), is(new TerminalSize(8, 3)));
+        assertThat(renderer.resizeIfNecessary(), is(false));
+        renderer.close();
+    }
+}
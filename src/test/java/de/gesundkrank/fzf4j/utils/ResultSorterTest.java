@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1;
+import de.gesundkrank.fzf4j.models.OrderBy;
+import de.gesundkrank.fzf4j.models.Result;
+
+class ResultSorterTest {
+
+    @Test
+    void sortLikeComparator() {
+        final var random = new Random(42);
+        final Result<?>[] results = new Result<?>[10_000];
+        for (var i = 0; i < results.length; i++) {
+            final var score = random.nextInt(200) - 50;
+            final var sortKey = OrderBy.SCORE.sortKey(
+                    score, random.nextInt(100), random.nextInt(10), random.nextInt(10));
+            results[i] = new Result<>(null, "", 0, 0, score, null, i, sortKey);
+        }
+
+        final var expected = new ArrayList<>(Arrays.asList(results));
+        expected.sort(ResultComparator.INSTANCE);
+        ResultSorter.sort(results);
+
+        assertThat(Arrays.asList(results), is(expected));
+    }
+
+    @Test
+    void merge() {
+        final var random = new Random(42);
+        final Result<?>[] results = new Result<?>[1_000];
+        for (var i = 0; i < results.length; i++) {
+            results[i] = new Result<>(null, "", 0, 0, 0, null, i, random.nextInt(100));
+        }
+        final var first = Arrays.copyOf(results, 300);
+        final var second = Arrays.copyOfRange(results, 300, results.length);
+        ResultSorter.sort(first);
+        ResultSorter.sort(second);
+        ResultSorter.sort(results);
+
+        assertThat(Arrays.asList(ResultSorter.merge(first, second)), is(Arrays.asList(results)));
+        assertThat(ResultSorter.merge(first, new Result<?>[0]), is(first));
+    }
+
+    @Test
+    void tiebreak() {
+        final var items = List.of("xx foo", "foo bar", "foo", "foo", " foo", "fo-o");
+        final var byScore = new FuzzyMatcherV1<>(items, OrderBy.SCORE, false, false).match("foo");
+        assertThat(indices(byScore), contains(2, 3, 4, 0, 1, 5));
+
+        final var byLength = new FuzzyMatcherV1<>(items, OrderBy.LENGTH, false, false).match("foo");
+        assertThat(indices(byLength), contains(2, 3, 4, 5, 0, 1));
+    }
+
+    private static List<Integer> indices(final List<? extends Result<?>> results) {
+        final var indices = new ArrayList<Integer>();
+        results.forEach(result -> indices.add(result.getItemIndex()));
+        return indices;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 Jan Graßegger
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.gesundkrank.fzf4j.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class ThreadsTest {
+
+    @Test
+    void singleThreadExecutorRunsTasksInOrder() throws InterruptedException, ExecutionException {
+        final var executor = Threads.newExecutor("fzf4j-test", 1);
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+        final var order = Collections.synchronizedList(new ArrayList<Integer>());
+        final var futures = new ArrayList<Future<?>>();
+        try {
+            for (var i = 0; i < 20; i++) {
+                final var task = i;
+                futures.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    order.add(task);
+                    running.decrementAndGet();
+                }));
+            }
+            for (final var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        assertThat(maxRunning.get(), is(1));
+        assertThat(order, is(IntStream.range(0, 20).boxed().collect(Collectors.toList())));
+    }
+
+    @Test
+    void lowPriorityThread() throws InterruptedException {
+        final var priority = new AtomicInteger();
+        final var thread = Threads.newLowPriorityThread(
+                "fzf4j-test", () -> priority.set(Thread.currentThread().getPriority()));
+        thread.start();
+        thread.join();
+
+        assertThat(thread.isDaemon(), is(true));
+        assertThat(priority.get(), is(Thread.MIN_PRIORITY));
+    }
+}